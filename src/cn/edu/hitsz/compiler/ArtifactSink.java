@@ -0,0 +1,86 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * 一次编译的各项输出的去处
+ * <br>
+ * 编译器不直接写入 {@link FilePathConfig} 中的固定路径, 而是把每项输出的内容交给所在编译的 sink,
+ * 这样同一进程中并发进行的多次编译可以各自输出到不同的目录, 或者只保存在内存中.
+ */
+@FunctionalInterface
+public interface ArtifactSink {
+    /**
+     * 编译的各项输出, 默认文件名与 {@link FilePathConfig} 中的相同
+     */
+    enum Artifact {
+        TOKENS(FilePathConfig.TOKEN_PATH),
+        OLD_SYMBOL_TABLE(FilePathConfig.OLD_SYMBOL_TABLE),
+        PARSER_LIST(FilePathConfig.PARSER_PATH),
+        NEW_SYMBOL_TABLE(FilePathConfig.NEW_SYMBOL_TABLE),
+        INTERMEDIATE_CODE(FilePathConfig.INTERMEDIATE_CODE_PATH),
+        PASS_STATISTICS(FilePathConfig.PASS_STATISTICS),
+        IR_AFTER_PASSES(FilePathConfig.IR_AFTER_PASSES),
+        EMULATE_RESULT(FilePathConfig.EMULATE_RESULT),
+        EMULATE_PROFILE(FilePathConfig.EMULATE_PROFILE),
+        EMULATE_VARIABLES(FilePathConfig.EMULATE_VARIABLES),
+        EMULATE_TRACE(FilePathConfig.EMULATE_TRACE),
+        ASSEMBLY_LANGUAGE(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+
+        private final String defaultPath;
+
+        Artifact(String defaultPath) {
+            this.defaultPath = defaultPath;
+        }
+
+        /**
+         * @return 单独运行编译器时的输出路径
+         */
+        public String getDefaultPath() {
+            return defaultPath;
+        }
+
+        /**
+         * @return 输出的文件名, 如 token.txt
+         */
+        public String getFileName() {
+            return Paths.get(defaultPath).getFileName().toString();
+        }
+    }
+
+    /**
+     * 接收一项输出
+     *
+     * @param artifact 输出的种类
+     * @param lines    输出的内容, 每个元素为一行
+     */
+    void accept(Artifact artifact, List<String> lines);
+
+    /**
+     * @return 写入 {@link FilePathConfig} 中默认路径的 sink, 与单独运行编译器时相同
+     */
+    static ArtifactSink defaults() {
+        return (artifact, lines) -> FileUtils.writeLines(artifact.getDefaultPath(), lines);
+    }
+
+    /**
+     * @param directory 输出目录, 必须已经存在
+     * @return 把各项输出以默认文件名写入该目录的 sink
+     */
+    static ArtifactSink directory(Path directory) {
+        return (artifact, lines) -> FileUtils.writeLines(directory.resolve(artifact.getFileName()).toString(), lines);
+    }
+
+    /**
+     * @return 丢弃所有输出的 sink
+     */
+    static ArtifactSink discard() {
+        return (artifact, lines) -> {
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.CompilerOptions;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 批量编译
+ * <br>
+ * 在同一个进程中编译一个目录下的全部源文件, 或清单文件中列出的全部源文件. 分析表等共享部分只准备一次,
+ * 各文件在 {@code --jobs} 个线程上并发编译, 结果分别输出到 {@code --batch-out} 下以源文件命名的子目录中,
+ * 最后输出总的吞吐量.
+ * <br>
+ * 清单文件每行一个源文件路径, 相对路径相对于清单文件所在目录; 空行与以 # 开头的行被忽略.
+ */
+public final class BatchCompiler {
+    /**
+     * 按选项批量编译
+     *
+     * @param compiler 编译器
+     * @param options  选项, 其中 {@link CompilerOptions#getBatchInput()} 不为 null
+     * @return 是否全部编译成功
+     */
+    public static boolean run(Compiler compiler, CompilerOptions options) {
+        final var sources = collectSources(Paths.get(options.getBatchInput()));
+        final var outputRoot = Paths.get(options.getBatchOutput());
+
+        final var sessions = new ArrayList<CompilationSession>(sources.size());
+        final var usedNames = new HashSet<String>();
+        long totalBytes = 0;
+        for (final var source : sources) {
+            final var directory = outputRoot.resolve(uniqueName(source, usedNames));
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // 不存在的源文件留到编译时作为该文件的失败报告
+            if (Files.isRegularFile(source)) {
+                totalBytes += source.toFile().length();
+            }
+            sessions.add(CompilationSession.ofFile(source, ArtifactSink.directory(directory)));
+        }
+
+        final var failed = new AtomicInteger();
+        final var pool = Executors.newFixedThreadPool(options.getJobs(), runnable -> {
+            final var thread = new Thread(runnable, "batch-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var begin = System.nanoTime();
+        try {
+            final var futures = compiler.submitAll(sessions, pool);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).join();
+                } catch (CompletionException e) {
+                    failed.incrementAndGet();
+                    final var cause = e.getCause() == null ? e : e.getCause();
+                    System.out.printf("FAILED %s: %s%n", sessions.get(i).getName(), cause);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        final var millis = Math.max((System.nanoTime() - begin) / 1_000_000, 1);
+
+        System.out.printf("Compiled %d files (%d failed) with %d jobs in %d ms: %.1f files/s, %.1f KiB/s%n",
+            sessions.size(), failed.get(), options.getJobs(), millis,
+            sessions.size() * 1000.0 / millis, totalBytes * 1000.0 / 1024 / millis);
+        return failed.get() == 0;
+    }
+
+    /**
+     * @param input 源代码目录或清单文件
+     * @return 全部源文件, 目录中的按文件名排序, 清单中的按清单顺序
+     */
+    private static List<Path> collectSources(Path input) {
+        if (Files.isDirectory(input)) {
+            try (final Stream<Path> files = Files.list(input)) {
+                return files.filter(Files::isRegularFile).sorted().toList();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        final var base = input.toAbsolutePath().getParent();
+        return FileUtils.readLines(input.toString()).stream()
+            .map(String::strip)
+            .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+            .map(base::resolve)
+            .toList();
+    }
+
+    /**
+     * @return 源文件去掉扩展名后的名字, 与已用的名字重复时加上序号
+     */
+    private static String uniqueName(Path source, Set<String> usedNames) {
+        final var fileName = source.getFileName().toString();
+        final var dot = fileName.lastIndexOf('.');
+        final var stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+
+        var name = stem;
+        for (int suffix = 2; !usedNames.add(name); suffix++) {
+            name = stem + "-" + suffix;
+        }
+        return name;
+    }
+
+    private BatchCompiler() {
+    }
+}
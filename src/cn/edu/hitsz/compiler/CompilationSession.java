@@ -0,0 +1,120 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.TempCounter;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 一次编译的全部可变状态
+ * <br>
+ * 文法, 词法单元类型与 LR 分析表在各次编译间共享且不可变 (见 {@link Compiler}); 每次编译自己的符号表, 临时变量编号
+ * 与输出去处则都保存在各自的 session 中. 因此同一进程中可以在多个线程上同时进行多次编译, 且每次编译的结果都与单独编译时相同.
+ * <br>
+ * 一个 session 只能被编译一次.
+ */
+public final class CompilationSession {
+    /**
+     * @param path 源代码文件
+     * @param sink 输出的去处
+     * @return 编译该文件的 session
+     */
+    public static CompilationSession ofFile(Path path, ArtifactSink sink) {
+        return new CompilationSession(path.toString(), path, null, sink);
+    }
+
+    /**
+     * @param name 源代码的名字, 只用于标识该 session
+     * @param code 源代码
+     * @param sink 输出的去处
+     * @return 编译该源代码的 session
+     */
+    public static CompilationSession ofSource(String name, String code, ArtifactSink sink) {
+        return new CompilationSession(name, null, code.getBytes(StandardCharsets.UTF_8), sink);
+    }
+
+    private final String name;
+    private final Path path;
+    private final byte[] code;
+    private final ArtifactSink sink;
+    private final SymbolTable symbolTable = new SymbolTable();
+    private final TempCounter temps = new TempCounter();
+
+    private boolean compiled = false;
+    private List<Instruction> instructions = List.of();
+    private Integer returnValue = null;
+
+    private CompilationSession(String name, Path path, byte[] code, ArtifactSink sink) {
+        this.name = name;
+        this.path = path;
+        this.code = code;
+        this.sink = sink;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 源代码文件, 源代码不来自文件时为空
+     */
+    public Optional<Path> getPath() {
+        return Optional.ofNullable(path);
+    }
+
+    /**
+     * @return 不来自文件的源代码, 来自文件时为 null
+     */
+    byte[] getCode() {
+        return code;
+    }
+
+    public ArtifactSink getSink() {
+        return sink;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public TempCounter getTemps() {
+        return temps;
+    }
+
+    /**
+     * @return 编译生成的中间代码, 编译之前为空
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return 模拟执行中间代码得到的返回值, 没有返回值或编译之前为空
+     */
+    public Optional<Integer> getReturnValue() {
+        return Optional.ofNullable(returnValue);
+    }
+
+    /**
+     * 标记该 session 开始编译
+     *
+     * @throws RuntimeException 该 session 已经被编译过
+     */
+    void begin() {
+        synchronized (this) {
+            if (compiled) {
+                throw new RuntimeException("Session %s has already been compiled".formatted(name));
+            }
+            compiled = true;
+        }
+    }
+
+    void complete(List<Instruction> instructions, Optional<Integer> returnValue) {
+        this.instructions = List.copyOf(instructions);
+        this.returnValue = returnValue.orElse(null);
+    }
+}
@@ -0,0 +1,48 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.CompilerOptions;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 编译服务器的客户端
+ * <br>
+ * 与 {@link Main} 一样读取默认的输入文件, 并把各项结果写入默认路径, 只是编译交给已经在运行的 {@link CompileServer} 完成.
+ * 因此 check-result.py 等依赖默认输出路径的脚本无需任何改动. 可以用 {@code --port=N} 指定服务器端口.
+ */
+public class CompileClient {
+    public static void main(String[] args) throws IOException {
+        // 只使用其中的 --port, 编译选项由服务器启动时的参数决定
+        final var port = CompilerOptions.parse(args).getPort();
+
+        final String code;
+        try {
+            code = Files.readString(Paths.get(FilePathConfig.SRC_CODE_PATH));
+        } catch (IOException e) {
+            System.out.println("File Load Error When Lexical Analysis");
+            return;
+        }
+
+        try (final var socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             final var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             final var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            CompileProtocol.writeRequest(out, code);
+            final var artifacts = CompileProtocol.readResponse(in);
+            artifacts.forEach((artifact, lines) -> FileUtils.writeLines(artifact.getDefaultPath(), lines));
+        } catch (RuntimeException e) {
+            // 服务器上编译失败, 与直接运行 Main 时一样以非零状态退出
+            System.err.println("Compile failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
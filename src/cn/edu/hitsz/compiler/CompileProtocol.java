@@ -0,0 +1,109 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ArtifactSink.Artifact;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译服务器与客户端之间的协议
+ * <br>
+ * 一个连接上可以依次发送多个请求, 每个请求得到一个响应. 字符串均以 "int 字节数 + UTF-8 字节" 表示.
+ * <ul>
+ *     <li>请求: 源代码字符串</li>
+ *     <li>成功的响应: true, int 输出项数, 之后每项为 "输出种类的名字, int 行数, 各行"</li>
+ *     <li>失败的响应: false, 错误信息</li>
+ * </ul>
+ * 读取时拒绝负数或超过上限的长度, 避免一个损坏或恶意的请求让对方分配任意大的数组.
+ */
+final class CompileProtocol {
+    /**
+     * 一个字符串最多的字节数
+     */
+    static final int MAX_STRING_BYTES = 64 << 20;
+
+    static void writeRequest(DataOutputStream out, String code) throws IOException {
+        writeString(out, code);
+        out.flush();
+    }
+
+    /**
+     * @return 请求中的源代码
+     * @throws java.io.EOFException 对方在请求开始前关闭了连接
+     * @throws IOException          请求格式错误或连接失败
+     */
+    static String readRequest(DataInputStream in) throws IOException {
+        return readString(in);
+    }
+
+    static void writeArtifacts(DataOutputStream out, Map<Artifact, List<String>> artifacts) throws IOException {
+        out.writeBoolean(true);
+        out.writeInt(artifacts.size());
+        for (final var entry : artifacts.entrySet()) {
+            writeString(out, entry.getKey().name());
+            out.writeInt(entry.getValue().size());
+            for (final var line : entry.getValue()) {
+                writeString(out, line);
+            }
+        }
+        out.flush();
+    }
+
+    static void writeError(DataOutputStream out, String message) throws IOException {
+        out.writeBoolean(false);
+        writeString(out, message);
+        out.flush();
+    }
+
+    /**
+     * @return 各项输出
+     * @throws RuntimeException 服务器编译失败, 异常信息为服务器返回的错误信息
+     */
+    static Map<Artifact, List<String>> readResponse(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            throw new RuntimeException(readString(in));
+        }
+
+        final var artifacts = new EnumMap<Artifact, List<String>>(Artifact.class);
+        final var count = readLength(in, Artifact.values().length);
+        for (int i = 0; i < count; i++) {
+            final var artifact = Artifact.valueOf(readString(in));
+            final var lineCount = readLength(in, Integer.MAX_VALUE);
+            final var lines = new ArrayList<String>(Math.min(lineCount, 1 << 16));
+            for (int j = 0; j < lineCount; j++) {
+                lines.add(readString(in));
+            }
+            artifacts.put(artifact, lines);
+        }
+        return artifacts;
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final var bytes = new byte[readLength(in, MAX_STRING_BYTES)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readLength(DataInputStream in, int max) throws IOException {
+        final var length = in.readInt();
+        if (length < 0 || length > max) {
+            throw new IOException("Malformed message: length %d out of range [0, %d]".formatted(length, max));
+        }
+        return length;
+    }
+
+    private CompileProtocol() {
+    }
+}
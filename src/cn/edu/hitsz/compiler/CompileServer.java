@@ -0,0 +1,94 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ArtifactSink.Artifact;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 常驻的编译服务器
+ * <br>
+ * 服务器启动时准备好 {@link Compiler}, 词法单元类型, 文法与分析表在之后的所有请求间共享, JIT 也始终是热的.
+ * 它只监听回环地址, 每个连接在线程池中的一个线程上处理, 每个请求在自己的 {@link CompilationSession} 上编译,
+ * 各项输出保存在内存中, 随响应返回给客户端. 协议见 {@link CompileProtocol}.
+ *
+ * @see CompileClient
+ */
+public final class CompileServer {
+    private final Compiler compiler;
+    private final int port;
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        final var thread = new Thread(runnable, "compile-server-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param compiler 处理所有请求的编译器
+     * @param port     监听的端口
+     */
+    public CompileServer(Compiler compiler, int port) {
+        this.compiler = compiler;
+        this.port = port;
+    }
+
+    /**
+     * 在当前线程上接受连接, 直到进程结束
+     *
+     * @throws IOException 无法监听端口
+     */
+    public void serve() throws IOException {
+        try (final var server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            System.out.printf("Compile server listening on %s:%d%n", server.getInetAddress().getHostAddress(), server.getLocalPort());
+            while (true) {
+                final var socket = server.accept();
+                workers.execute(() -> handle(socket));
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             final var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             final var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                final String code;
+                try {
+                    code = CompileProtocol.readRequest(in);
+                } catch (EOFException e) {
+                    // 客户端不再发送请求
+                    return;
+                } catch (IOException e) {
+                    // 请求格式错误时无法确定下一个请求从哪里开始, 告知客户端后关闭连接
+                    CompileProtocol.writeError(out, e.toString());
+                    return;
+                }
+
+                final var artifacts = new EnumMap<Artifact, List<String>>(Artifact.class);
+                final var session = CompilationSession.ofSource(socket.getRemoteSocketAddress().toString(), code, artifacts::put);
+                try {
+                    compiler.compile(session);
+                } catch (IOException | RuntimeException e) {
+                    CompileProtocol.writeError(out, e.toString());
+                    continue;
+                }
+                CompileProtocol.writeArtifacts(out, artifacts);
+            }
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ArtifactSink.Artifact;
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.pass.PassManager;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.AsyncObserverPipeline;
+import cn.edu.hitsz.compiler.parser.GeneratedDriver;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ParserCodeGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxDirectedTranslator;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.CompressedLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.BytecodeEmulator;
+import cn.edu.hitsz.compiler.utils.CompilerOptions;
+import cn.edu.hitsz.compiler.utils.EmulatorProfile;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.SlotEmulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 编译器
+ * <br>
+ * 创建时按选项准备好所有编译共享的不可变部分: 词法单元类型, 文法, LR 分析表以及生成的驱动程序.
+ * 之后每次编译都在各自的 {@link CompilationSession} 上进行, 互不共享可变状态, 因此可以在任意多个线程上同时编译.
+ */
+public final class Compiler {
+    /**
+     * 按选项准备分析表等共享的部分
+     *
+     * @param options 编译选项
+     * @return 编译器
+     */
+    public static Compiler create(CompilerOptions options) {
+        // 构建各部分共用的词法单元类型
+        TokenKind.loadTokenKinds();
+
+        // 读取第三方程序构造的 LR 分析表, 默认优先读取其二进制缓存
+        // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
+        final var lrTable = switch (options.getTableSource()) {
+            case CSV -> options.isTableCache()
+                ? TableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_CACHE_PATH)
+                : new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+            case SLR -> generateTable(TableGenerator.Mode.SLR, options.isParallelTable());
+            case LALR -> generateTable(TableGenerator.Mode.LALR, options.isParallelTable());
+        };
+
+        final ParseTable table = options.isCompressTable()
+            // 默认规约与行位移压缩后的表更小, 查询接口与稠密表相同
+            ? CompressedLRTable.compress(CompiledLRTable.compile(lrTable))
+            : CompiledLRTable.compile(lrTable);
+
+        GeneratedDriver driver = null;
+        if (options.getDriver() == CompilerOptions.Driver.GENERATED) {
+            // 把分析表生成为专用的驱动程序, 运行时编译加载; 当前环境无法编译时退回查表的主循环
+            final var source = ParserCodeGenerator.generate(table);
+            // 编译在内存中进行, 只有显式要求时才把源代码写到磁盘上
+            if (options.getGeneratedParserOutput() != null) {
+                FileUtils.writeFile(options.getGeneratedParserOutput(), source);
+            }
+            try {
+                driver = ParserCodeGenerator.compile(source);
+            } catch (RuntimeException e) {
+                System.err.println("Generated parser unavailable, falling back to table driver: " + e.getMessage());
+            }
+        }
+
+        return new Compiler(options, table, driver);
+    }
+
+    private final CompilerOptions options;
+    private final ParseTable table;
+    private final GeneratedDriver driver;
+
+    private Compiler(CompilerOptions options, ParseTable table, GeneratedDriver driver) {
+        this.options = options;
+        this.table = table;
+        this.driver = driver;
+    }
+
+    public CompilerOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 在当前线程上完成一次编译, 各项输出交给 session 的 sink
+     *
+     * @param session 编译的 session
+     * @throws IOException 读取源代码文件失败
+     */
+    public void compile(CompilationSession session) throws IOException {
+        session.begin();
+        final var symbolTable = session.getSymbolTable();
+        final var sink = session.getSink();
+
+        // 词法分析
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.setStreaming(options.isStreamTokens(), options.isKeepTokens());
+        if (session.getCode() != null) {
+            lexer.loadSource(ByteBuffer.wrap(session.getCode()));
+        } else {
+            lexer.loadFile(session.getPath().orElseThrow().toString());
+        }
+        lexer.run();
+        final var tokens = lexer.getTokens();
+        if (!options.isStreamTokens()) {
+            sink.accept(Artifact.TOKENS, lexer.dumpLines());
+            sink.accept(Artifact.OLD_SYMBOL_TABLE, symbolTable.dumpLines());
+        }
+
+        // 加载 LR 分析驱动程序
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(tokens);
+        parser.loadLRTable(table);
+        if (driver != null) {
+            parser.loadGeneratedDriver(driver);
+        }
+
+        // 加入生成规约列表的 Observer
+        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
+        // 用作语义检查的部件
+        final var semanticAnalyzer = new SemanticAnalyzer();
+        // 用作 IR 生成的部件, 临时变量由本次编译自己的分配器编号
+        final var irGenerator = new IRGenerator(session.getTemps());
+
+        final List<ActionObserver> observers;
+        if (options.isFusedTranslation()) {
+            // 三者合并为同一个语法制导翻译器, 共用一个属性栈, 每次规约只分派一次
+            final var translator = new SyntaxDirectedTranslator();
+            translator.setCollector(productionCollector);
+            translator.addComponent(semanticAnalyzer);
+            translator.addComponent(irGenerator);
+            observers = List.of(translator);
+        } else {
+            observers = List.of(productionCollector, semanticAnalyzer, irGenerator);
+        }
+
+        AsyncObserverPipeline pipeline = null;
+        if (options.isAsyncObservers()) {
+            // 各 Observer 在自己的线程上消费事件, 解析结束时驱动程序会等待它们全部完成
+            pipeline = new AsyncObserverPipeline(observers);
+            parser.registerObserver(pipeline);
+        } else {
+            observers.forEach(parser::registerObserver);
+        }
+
+        // 所有 Observer 都不关心的单产生式规约可以整串跳过, ProductionCollector 仍会还原出完整的规约序列
+        parser.setBypassUnitChains(options.isBypassUnitChains());
+        // 在顶层语句的边界处分块, 各块由各自的驱动程序与观察者并行分析后按源代码顺序合并
+        parser.setParallelParse(options.isParallelParse());
+
+        // 执行语法解析并在解析过程中依次调用各 Observer
+        try {
+            parser.run();
+        } finally {
+            // 语法分析出错时没有 accept 事件, 需要显式结束各消费者线程
+            if (pipeline != null) {
+                pipeline.close();
+            }
+        }
+
+        // 按需分析时, 词法分析直到语法分析结束才完成
+        if (options.isStreamTokens()) {
+            if (options.isKeepTokens()) {
+                sink.accept(Artifact.TOKENS, lexer.dumpLines());
+            }
+            // 词法分析只会加入条目而不会设置类型, 因此语义分析前的符号表就是全部符号名加上空类型
+            final var oldSymbolTable = new SymbolTable();
+            symbolTable.getAllNames().forEach(oldSymbolTable::add);
+            sink.accept(Artifact.OLD_SYMBOL_TABLE, oldSymbolTable.dumpLines());
+        }
+
+        // 各 Observer 输出结果
+        sink.accept(Artifact.PARSER_LIST, productionCollector.dumpLines());
+        sink.accept(Artifact.NEW_SYMBOL_TABLE, symbolTable.dumpLines());
+        final var generated = irGenerator.getIR();
+        sink.accept(Artifact.INTERMEDIATE_CODE, irGenerator.dumpLines());
+
+        // 在 IR 上依次执行各变换遍, 之后的模拟执行与汇编生成都使用变换后的 IR
+        final var passManager = options.getPasses() != null
+            ? PassManager.of(options.getPasses())
+            : PassManager.forLevel(options.getOptLevel());
+        passManager.setDumpAfter(options.getDumpIRAfter());
+        final var instructions = passManager.run(generated);
+        if (!passManager.isEmpty()) {
+            sink.accept(Artifact.PASS_STATISTICS, passManager.dumpStatistics());
+        }
+        if (!options.getDumpIRAfter().isEmpty()) {
+            sink.accept(Artifact.IR_AFTER_PASSES, passManager.dumpIR());
+        }
+        // 没有变换时直接使用 IR 生成时的紧凑存储
+        final var buffer = instructions == generated ? irGenerator.getIRBuffer() : IRBuffer.of(instructions);
+
+        // 模拟执行 IR 并输出结果
+        final Optional<Integer> returnValue;
+        if (options.isProfileEmulator()) {
+            // 剖析时总是使用 IREmulator 的插桩执行循环, 剖析数据输出在模拟执行结果旁边
+            final var profile = new EmulatorProfile(options.getTraceSize());
+            final var emulator = IREmulator.load(instructions);
+            emulator.setProfile(profile);
+            returnValue = emulator.execute();
+            sink.accept(Artifact.EMULATE_PROFILE, profile.dumpJson());
+            sink.accept(Artifact.EMULATE_VARIABLES, profile.dumpVariables());
+            sink.accept(Artifact.EMULATE_TRACE, profile.dumpTrace());
+        } else {
+            returnValue = switch (options.getEmulator()) {
+                case MAP -> IREmulator.load(instructions).execute();
+                case SLOT -> SlotEmulator.load(buffer).execute();
+                case BYTECODE -> BytecodeEmulator.load(buffer).execute();
+            };
+        }
+        sink.accept(Artifact.EMULATE_RESULT, List.of(returnValue.map(Objects::toString).orElse("No return value")));
+        session.complete(generated, returnValue);
+
+        // 由 IR 生成汇编, 新建的临时变量接着 IR 生成时的编号
+        final var asmGenerator = new AssemblyGenerator(session.getTemps());
+        asmGenerator.loadIR(instructions);
+        asmGenerator.run();
+        sink.accept(Artifact.ASSEMBLY_LANGUAGE, asmGenerator.dumpLines());
+    }
+
+    /**
+     * 在给定的 executor 上异步编译
+     *
+     * @param session  编译的 session
+     * @param executor 执行编译的 executor, 如线程池
+     * @return 编译完成时完成的 future, 读取源代码失败时以 {@link UncheckedIOException} 异常完成
+     */
+    public CompletableFuture<CompilationSession> submit(CompilationSession session, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                compile(session);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return session;
+        }, executor);
+    }
+
+    /**
+     * 在给定的 executor 上同时编译多个 session
+     *
+     * @param sessions 各次编译的 session
+     * @param executor 执行编译的 executor
+     * @return 按 sessions 顺序排列的各次编译的 future
+     */
+    public List<CompletableFuture<CompilationSession>> submitAll(Collection<CompilationSession> sessions,
+                                                                 Executor executor) {
+        final var futures = new ArrayList<CompletableFuture<CompilationSession>>(sessions.size());
+        for (final var session : sessions) {
+            futures.add(submit(session, executor));
+        }
+        return futures;
+    }
+
+    private static LRTable generateTable(TableGenerator.Mode mode, boolean parallel) {
+        final var tableGenerator = new TableGenerator(mode, parallel);
+        tableGenerator.run();
+        return tableGenerator.getTable();
+    }
+}
@@ -5,6 +5,7 @@ import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.TempCounter;
 import cn.edu.hitsz.compiler.utils.BMap;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
@@ -36,6 +37,19 @@ public class AssemblyGenerator {
     private BMap<IRVariable,Reg> bMap;
     private Map<IRVariable,Integer> lastPos;
     private List<String> asm;
+    // 临时变量的编号分配器, 与生成 IR 时使用的相同, 以免新建的临时变量与已有的重名
+    private final TempCounter temps;
+
+    public AssemblyGenerator() {
+        this(TempCounter.shared());
+    }
+
+    /**
+     * @param temps 生成 IR 时使用的临时变量编号分配器
+     */
+    public AssemblyGenerator(TempCounter temps) {
+        this.temps = temps;
+    }
 
     private void preProcess(){
         IRs = new LinkedList<>();
@@ -76,7 +90,7 @@ public class AssemblyGenerator {
                                 )
                         ));
                     }else if (lImm && !rImm){  // a = imm - b
-                        var temp = IRVariable.temp();
+                        var temp = temps.next();
                         IRs.add(Instruction.createMov(temp,ir.getLHS()));
                         IRs.add(Instruction.createSub(
                                 ir.getResult(),
@@ -97,7 +111,7 @@ public class AssemblyGenerator {
                                 )
                         ));
                     }else if (lImm ^ rImm){  // a = imm * b; a = b * imm;
-                        var temp = IRVariable.temp();
+                        var temp = temps.next();
                         var imm = ir.getLHS();
                         var b = ir.getRHS();
                         if (b instanceof IRImmediate){
@@ -259,13 +273,20 @@ public class AssemblyGenerator {
         throw new RegisterNotEnoughException();
     }
 
+    /**
+     * @return 汇编代码的输出内容, 每条指令一行
+     */
+    public List<String> dumpLines() {
+        return List.copyOf(asm);
+    }
+
     /**
      * 输出汇编代码到文件
      *
      * @param path 输出文件路径
      */
     public void dump(String path) {
-        FileUtils.writeLines(path,asm);
+        FileUtils.writeLines(path, dumpLines());
     }
 }
 
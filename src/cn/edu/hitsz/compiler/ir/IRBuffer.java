@@ -0,0 +1,258 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * 以 "数组的结构体" 形式紧凑存储的 IR
+ * <br>
+ * 第 i 条指令由以下几列的第 i 个元素共同表示, 而不是各自作为一个 Instruction 对象:
+ * <ul>
+ *     <li>kinds: 指令种类, 即 {@link InstructionKind} 的序号</li>
+ *     <li>results, lhs, rhs: 结果与两个操作数, 均为下面所说的操作数编码</li>
+ * </ul>
+ * 操作数编码是一个 int:
+ * <ul>
+ *     <li>非负数为变量编号. 变量在加入指令时被驻留为从 0 开始的稠密编号, 编号到 IRVariable 的对应保存在变量表中</li>
+ *     <li>{@link #NONE} 表示没有该操作数, 如 RET 的结果与 MOV 的第二个操作数</li>
+ *     <li>其余负数 -(k + 1) 表示常量池中第 k 个立即数, 相同的立即数只保存一次</li>
+ * </ul>
+ * 因此之后的各个阶段可以直接以变量编号为下标使用数组, 而不必以 IRVariable 为键做基于字符串的哈希查找.
+ * 需要 Instruction 时 (如按原有格式输出), 可以通过 {@link #get} 或 {@link #asList()} 按需构造.
+ */
+public class IRBuffer {
+    /**
+     * 不存在的操作数
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size = 0;
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] results = new int[INITIAL_CAPACITY];
+    private int[] lhs = new int[INITIAL_CAPACITY];
+    private int[] rhs = new int[INITIAL_CAPACITY];
+
+    private final List<IRVariable> variables = new ArrayList<>();
+    private final Map<IRVariable, Integer> variableIds = new HashMap<>();
+    private int[] constants = new int[16];
+    private int constantCount = 0;
+    private final Map<Integer, Integer> constantIds = new HashMap<>();
+
+    /**
+     * @param instructions 指令
+     * @return 依次包含这些指令的 IRBuffer
+     */
+    public static IRBuffer of(List<Instruction> instructions) {
+        final var buffer = new IRBuffer();
+        instructions.forEach(buffer::add);
+        return buffer;
+    }
+
+    //============================== 写入 ==============================
+
+    /**
+     * 在末尾加入一条指令, 其中的变量与立即数被驻留
+     *
+     * @param instruction 指令
+     */
+    public void add(Instruction instruction) {
+        final var kind = instruction.getKind();
+        final var result = kind.isReturn() ? NONE : encode(instruction.getResult());
+        final var operands = instruction.getOperands();
+        final var first = encode(operands.get(0));
+        final var second = operands.size() > 1 ? encode(operands.get(1)) : NONE;
+        append(kind.ordinal(), result, first, second);
+    }
+
+    private void append(int kind, int result, int first, int second) {
+        if (size == kinds.length) {
+            final var capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            results = Arrays.copyOf(results, capacity);
+            lhs = Arrays.copyOf(lhs, capacity);
+            rhs = Arrays.copyOf(rhs, capacity);
+        }
+
+        kinds[size] = kind;
+        results[size] = result;
+        lhs[size] = first;
+        rhs[size] = second;
+        size++;
+    }
+
+    /**
+     * @return 值的操作数编码
+     */
+    private int encode(IRValue value) {
+        if (value instanceof IRVariable variable) {
+            return variableIds.computeIfAbsent(variable, v -> {
+                variables.add(v);
+                return variables.size() - 1;
+            });
+        } else if (value instanceof IRImmediate immediate) {
+            final var index = constantIds.computeIfAbsent(immediate.getValue(), v -> {
+                if (constantCount == constants.length) {
+                    constants = Arrays.copyOf(constants, constantCount * 2);
+                }
+                constants[constantCount] = v;
+                return constantCount++;
+            });
+            return -(index + 1);
+        } else {
+            throw new RuntimeException("Unknown IR value type");
+        }
+    }
+
+    //============================== 读取 ==============================
+
+    /**
+     * @return 指令的条数
+     */
+    public int size() {
+        return size;
+    }
+
+    public InstructionKind getKind(int index) {
+        return KINDS[kinds[checkIndex(index)]];
+    }
+
+    /**
+     * @return 第 index 条指令的结果的操作数编码, RET 为 {@link #NONE}
+     */
+    public int getResult(int index) {
+        return results[checkIndex(index)];
+    }
+
+    /**
+     * @return 第 index 条指令的第一个操作数的编码, 对 MOV 为 from, 对 RET 为返回值
+     */
+    public int getLHS(int index) {
+        return lhs[checkIndex(index)];
+    }
+
+    /**
+     * @return 第 index 条指令的第二个操作数的编码, 对 MOV 与 RET 为 {@link #NONE}
+     */
+    public int getRHS(int index) {
+        return rhs[checkIndex(index)];
+    }
+
+    /**
+     * @return 操作数编码是否表示一个变量
+     */
+    public static boolean isVariable(int operand) {
+        return operand >= 0;
+    }
+
+    /**
+     * @return 操作数编码是否表示一个立即数
+     */
+    public static boolean isImmediate(int operand) {
+        return operand < 0 && operand != NONE;
+    }
+
+    /**
+     * @return 立即数操作数在常量池中的下标
+     */
+    public static int constantIndexOf(int operand) {
+        return -operand - 1;
+    }
+
+    /**
+     * @return 不同变量的个数, 变量编号为 0 到该值减一
+     */
+    public int getVariableCount() {
+        return variables.size();
+    }
+
+    /**
+     * @return 编号对应的变量
+     */
+    public IRVariable getVariable(int id) {
+        return variables.get(id);
+    }
+
+    /**
+     * @return 常量池中不同立即数的个数
+     */
+    public int getConstantCount() {
+        return constantCount;
+    }
+
+    /**
+     * @return 常量池中第 index 个立即数的值
+     */
+    public int getConstant(int index) {
+        if (index < 0 || index >= constantCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return constants[index];
+    }
+
+    /**
+     * @return 立即数操作数的值
+     */
+    public int getImmediate(int operand) {
+        return getConstant(constantIndexOf(operand));
+    }
+
+    /**
+     * @return 操作数编码对应的 IRValue
+     */
+    public IRValue getValue(int operand) {
+        if (isVariable(operand)) {
+            return variables.get(operand);
+        } else if (isImmediate(operand)) {
+            return IRImmediate.of(getImmediate(operand));
+        } else {
+            throw new RuntimeException("No operand");
+        }
+    }
+
+    /**
+     * @return 与第 index 条指令内容相同的 Instruction 对象
+     */
+    public Instruction get(int index) {
+        return switch (getKind(index)) {
+            case ADD -> Instruction.createAdd(variables.get(results[index]), getValue(lhs[index]), getValue(rhs[index]));
+            case SUB -> Instruction.createSub(variables.get(results[index]), getValue(lhs[index]), getValue(rhs[index]));
+            case MUL -> Instruction.createMul(variables.get(results[index]), getValue(lhs[index]), getValue(rhs[index]));
+            case MOV -> Instruction.createMov(variables.get(results[index]), getValue(lhs[index]));
+            case RET -> Instruction.createRet(getValue(lhs[index]));
+        };
+    }
+
+    /**
+     * @return 以 Instruction 形式访问全部指令的只读视图, 每次访问时按需构造 Instruction
+     */
+    public List<Instruction> asList() {
+        return new InstructionView();
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return index;
+    }
+
+    private class InstructionView extends AbstractList<Instruction> implements RandomAccess {
+        @Override
+        public Instruction get(int index) {
+            return IRBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -18,10 +18,21 @@ public class IRVariable implements IRValue {
     }
 
     /**
-     * @return 一个对应于源语言中的临时变量的新 IRVariable
+     * @return 一个对应于源语言中的临时变量的新 IRVariable, 编号由进程内共享的 {@link TempCounter#shared()} 分配
      */
     public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+        return TempCounter.shared().next();
+    }
+
+    /**
+     * 按给定的编号创建临时变量, 不占用任何分配器的编号. 编号通常由 {@link TempCounter} 分配;
+     * 分块生成 IR 时各块也先使用块内的编号, 合并时再换成分配器分配的变量.
+     *
+     * @param index 临时变量的编号
+     * @return 名为 "$index" 的临时变量
+     */
+    public static IRVariable temp(int index) {
+        return new IRVariable("$" + index);
     }
 
     public String getName() {
@@ -56,5 +67,4 @@ public class IRVariable implements IRValue {
     }
 
     private final String name;
-    private static int count = 0;
 }
@@ -4,6 +4,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
@@ -80,6 +81,16 @@ public class Instruction {
     }
 
 
+    /**
+     * @param mapper 对结果与各个操作数的替换
+     * @return 种类不变, 结果与操作数替换后的新指令
+     */
+    public Instruction replaceValues(UnaryOperator<IRValue> mapper) {
+        final var newResult = result == null ? null : (IRVariable) mapper.apply(result);
+        return new Instruction(kind, newResult, operands.stream().map(mapper).toList());
+    }
+
+
     //============================== 基础设施 ==============================
     @Override
     public String toString() {
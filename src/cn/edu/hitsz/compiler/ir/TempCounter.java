@@ -0,0 +1,37 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 临时变量的编号分配器
+ * <br>
+ * 每次编译各自持有一个分配器 (见 CompilationSession), 从 0 开始为 IR 生成与汇编生成中新建的临时变量编号,
+ * 因此同一进程中并发进行的多次编译互不影响, 每次编译的结果都与单独编译时相同.
+ * 未指定分配器的地方使用进程内共享的分配器 {@link #shared()}, 与 {@link IRVariable#temp()} 相同.
+ */
+public final class TempCounter {
+    private static final TempCounter SHARED = new TempCounter();
+
+    /**
+     * @return 进程内共享的分配器
+     */
+    public static TempCounter shared() {
+        return SHARED;
+    }
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @return 一个新的临时变量
+     */
+    public IRVariable next() {
+        return IRVariable.temp(count.getAndIncrement());
+    }
+
+    /**
+     * @return 已经分配的临时变量数
+     */
+    public int size() {
+        return count.get();
+    }
+}
@@ -0,0 +1,99 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 常量传播与常量折叠
+ * <br>
+ * 顺序扫描 IR, 记录当前值为已知常量的变量 (最近一次赋值为 MOV 立即数), 把对它们的引用替换为立即数.
+ * 两个操作数都是立即数的运算折叠为 MOV, 并化简 x + 0, x - 0, x - x, x * 1, x * 0 等恒等式.
+ * 运算按 int 进行, 溢出时与 IREmulator 一样回绕. 以没有值的变量为操作数的运算不做化简, 以保留 IREmulator 上的异常.
+ */
+public class ConstantFolding implements IRPass {
+    public static final String NAME = "const-fold";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        final var constants = new HashMap<IRVariable, Integer>();
+        final var unassignedReads = IRPass.findUnassignedReads(instructions);
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (int i = 0; i < instructions.size(); i++) {
+            final var instruction = instructions.get(i);
+            if (unassignedReads[i]) {
+                // 这条运算在 IREmulator 上必然抛出异常, 原样保留
+                constants.remove(instruction.getResult());
+                result.add(instruction);
+                continue;
+            }
+
+            final var replaced = IRPass.replaceOperands(instruction, value -> {
+                if (value instanceof IRVariable variable && constants.containsKey(variable)) {
+                    return IRImmediate.of(constants.get(variable));
+                }
+                return value;
+            });
+            final var folded = fold(replaced);
+
+            if (!folded.getKind().isReturn()) {
+                if (folded.getKind() == InstructionKind.MOV && folded.getFrom() instanceof IRImmediate immediate) {
+                    constants.put(folded.getResult(), immediate.getValue());
+                } else {
+                    constants.remove(folded.getResult());
+                }
+            }
+            result.add(folded);
+        }
+        return result;
+    }
+
+    private static Instruction fold(Instruction instruction) {
+        final var kind = instruction.getKind();
+        if (!kind.isBinary()) {
+            return instruction;
+        }
+
+        final var target = instruction.getResult();
+        final var lhs = instruction.getLHS();
+        final var rhs = instruction.getRHS();
+        if (lhs instanceof IRImmediate left && rhs instanceof IRImmediate right) {
+            final var value = switch (kind) {
+                case ADD -> left.getValue() + right.getValue();
+                case SUB -> left.getValue() - right.getValue();
+                case MUL -> left.getValue() * right.getValue();
+                default -> throw new RuntimeException("Unknown binary instruction kind: " + kind);
+            };
+            return Instruction.createMov(target, IRImmediate.of(value));
+        }
+
+        return switch (kind) {
+            case ADD -> isConstant(rhs, 0) ? Instruction.createMov(target, lhs)
+                : isConstant(lhs, 0) ? Instruction.createMov(target, rhs)
+                : instruction;
+            case SUB -> isConstant(rhs, 0) ? Instruction.createMov(target, lhs)
+                : lhs instanceof IRVariable && lhs.equals(rhs) ? Instruction.createMov(target, IRImmediate.of(0))
+                : instruction;
+            case MUL -> isConstant(rhs, 1) ? Instruction.createMov(target, lhs)
+                : isConstant(lhs, 1) ? Instruction.createMov(target, rhs)
+                : isConstant(lhs, 0) || isConstant(rhs, 0) ? Instruction.createMov(target, IRImmediate.of(0))
+                : instruction;
+            default -> instruction;
+        };
+    }
+
+    private static boolean isConstant(IRValue value, int constant) {
+        return value instanceof IRImmediate immediate && immediate.getValue() == constant;
+    }
+}
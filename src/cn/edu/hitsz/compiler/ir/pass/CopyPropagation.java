@@ -0,0 +1,66 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 复写传播
+ * <br>
+ * 执行 MOV x, y 后, 在 x 与 y 都没有被重新赋值之前, 对 x 的引用都可以替换为 y.
+ * 替换后 x 往往不再被引用, 可由 {@link DeadCodeElimination} 删除. 替换后成为 MOV x, x 的指令直接删除.
+ */
+public class CopyPropagation implements IRPass {
+    public static final String NAME = "copy-prop";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        // x -> y 表示 x 当前是 y 的副本
+        final var copies = new HashMap<IRVariable, IRVariable>();
+        // y -> 曾经以 y 为源的各变量, 用于 y 被重新赋值时使这些副本关系失效
+        final var copiesOf = new HashMap<IRVariable, List<IRVariable>>();
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            final var replaced = IRPass.replaceOperands(instruction, value ->
+                value instanceof IRVariable variable ? copies.getOrDefault(variable, variable) : value);
+            if (replaced.getKind().isReturn()) {
+                result.add(replaced);
+                continue;
+            }
+
+            final var target = replaced.getResult();
+            final var isMov = replaced.getKind() == InstructionKind.MOV;
+            if (isMov && target.equals(replaced.getFrom())) {
+                continue;
+            }
+
+            // target 被重新赋值, 它自己的副本关系以及以它为源的副本关系都失效
+            copies.remove(target);
+            final var dependents = copiesOf.remove(target);
+            if (dependents != null) {
+                for (final var dependent : dependents) {
+                    if (target.equals(copies.get(dependent))) {
+                        copies.remove(dependent);
+                    }
+                }
+            }
+
+            if (isMov && replaced.getFrom() instanceof IRVariable source) {
+                copies.put(target, source);
+                copiesOf.computeIfAbsent(source, key -> new ArrayList<>()).add(target);
+            }
+            result.add(replaced);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,51 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 死代码删除
+ * <br>
+ * 从后向前计算活跃变量, 删除结果在之后不再被读取的指令. 程序唯一可观察的输出是 RET 的值, 因此所有 RET 都保留,
+ * RET 的操作数是活跃的; 最后一条 RET 之后的赋值都会被删除. 以没有值的变量为操作数的运算会在 IREmulator 上抛出异常,
+ * 因此与 RET 一样保留.
+ */
+public class DeadCodeElimination implements IRPass {
+    public static final String NAME = "dce";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions) {
+        final var forward = new ArrayList<>(instructions);
+        final var unassignedReads = IRPass.findUnassignedReads(forward);
+        final var live = new HashSet<IRVariable>();
+        final var kept = new ArrayList<Instruction>(forward.size());
+        for (var i = forward.size() - 1; i >= 0; i--) {
+            final var instruction = forward.get(i);
+            if (!instruction.getKind().isReturn()) {
+                if (!live.remove(instruction.getResult()) && !unassignedReads[i]) {
+                    continue;
+                }
+            }
+
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    live.add(variable);
+                }
+            }
+            kept.add(instruction);
+        }
+
+        Collections.reverse(kept);
+        return kept;
+    }
+}
@@ -0,0 +1,78 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * IR 上的一个变换遍, 由 {@link PassManager} 按顺序执行
+ * <br>
+ * 变换前后的 IR 在 IREmulator 上执行的结果必须相同. 由于 IREmulator 以最后一条 RET 为准,
+ * 而 AssemblyGenerator 以第一条 RET 为准, 各遍都不能删除或移动 RET.
+ * <br>
+ * IREmulator 中从未赋值的变量的值为 null, MOV 会原样复制 null, 而以 null 为操作数的运算会抛出异常.
+ * 各遍必须原样保留这样的运算指令 (见 {@link #findUnassignedReads}), 不能把它化简为不会抛出异常的指令, 也不能删除它.
+ */
+public interface IRPass {
+    /**
+     * @return 遍的名字, 用于命令行选项与统计输出, 如 const-fold
+     */
+    String getName();
+
+    /**
+     * @param instructions 变换前的 IR, 不会被修改
+     * @return 变换后的 IR
+     */
+    List<Instruction> run(List<Instruction> instructions);
+
+    /**
+     * IR 是没有跳转的直线代码, 因此每个变量在每条指令处是否有值在编译时就能确定
+     *
+     * @param instructions IR
+     * @return 第 i 个元素表示第 i 条指令是否是以没有值的变量为操作数的运算指令, 即在 IREmulator 上会抛出异常的指令
+     */
+    static boolean[] findUnassignedReads(List<Instruction> instructions) {
+        // 当前有值的变量
+        final var assigned = new HashSet<IRVariable>();
+        final var unassignedReads = new boolean[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++) {
+            final var instruction = instructions.get(i);
+            final var kind = instruction.getKind();
+            if (kind.isBinary()) {
+                unassignedReads[i] = instruction.getOperands().stream()
+                    .anyMatch(operand -> operand instanceof IRVariable variable && !assigned.contains(variable));
+                assigned.add(instruction.getResult());
+            } else if (kind == InstructionKind.MOV) {
+                if (instruction.getFrom() instanceof IRVariable from && !assigned.contains(from)) {
+                    assigned.remove(instruction.getResult());
+                } else {
+                    assigned.add(instruction.getResult());
+                }
+            }
+        }
+        return unassignedReads;
+    }
+
+    /**
+     * @param instruction 指令
+     * @param mapper      对各个操作数的替换, 不作用于结果
+     * @return 种类与结果不变, 操作数替换后的新指令
+     */
+    static Instruction replaceOperands(Instruction instruction, UnaryOperator<IRValue> mapper) {
+        return switch (instruction.getKind()) {
+            case ADD -> Instruction.createAdd(instruction.getResult(),
+                mapper.apply(instruction.getLHS()), mapper.apply(instruction.getRHS()));
+            case SUB -> Instruction.createSub(instruction.getResult(),
+                mapper.apply(instruction.getLHS()), mapper.apply(instruction.getRHS()));
+            case MUL -> Instruction.createMul(instruction.getResult(),
+                mapper.apply(instruction.getLHS()), mapper.apply(instruction.getRHS()));
+            case MOV -> Instruction.createMov(instruction.getResult(), mapper.apply(instruction.getFrom()));
+            case RET -> Instruction.createRet(mapper.apply(instruction.getReturnValue()));
+        };
+    }
+}
@@ -0,0 +1,170 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按顺序执行各个 {@link IRPass} 的管理器
+ * <br>
+ * 位于 IR 生成与模拟执行, 汇编生成之间. 每个遍执行后记录耗时与指令条数的变化, 并可按需记录该遍之后的 IR.
+ */
+public class PassManager {
+    /**
+     * 优化级别, 对应一组预先定义的遍
+     */
+    public enum Level {
+        /**
+         * 不做任何变换
+         */
+        O0,
+        /**
+         * 常量传播与折叠, 复写传播
+         */
+        O1,
+        /**
+         * 在 O1 的基础上删除死代码
+         */
+        O2
+    }
+
+    /**
+     * 一个遍执行一次的统计
+     *
+     * @param pass   遍的名字
+     * @param nanos  耗时, 单位为纳秒
+     * @param before 执行前的指令条数
+     * @param after  执行后的指令条数
+     */
+    public record Statistics(String pass, long nanos, int before, int after) {
+    }
+
+    /**
+     * 在 dump-after 集合中表示所有的遍
+     */
+    public static final String ALL_PASSES = "all";
+
+    /**
+     * @return 所有可用的遍的名字
+     */
+    public static List<String> getPassNames() {
+        return List.of(ConstantFolding.NAME, CopyPropagation.NAME, DeadCodeElimination.NAME);
+    }
+
+    /**
+     * @param name 遍的名字
+     * @return 新建的遍
+     * @throws RuntimeException 没有该名字的遍
+     */
+    public static IRPass createPass(String name) {
+        return switch (name) {
+            case ConstantFolding.NAME -> new ConstantFolding();
+            case CopyPropagation.NAME -> new CopyPropagation();
+            case DeadCodeElimination.NAME -> new DeadCodeElimination();
+            default -> throw new RuntimeException("Unknown IR pass: " + name);
+        };
+    }
+
+    /**
+     * @return 按优化级别依次执行各遍的管理器
+     */
+    public static PassManager forLevel(Level level) {
+        return of(switch (level) {
+            case O0 -> List.of();
+            case O1 -> List.of(ConstantFolding.NAME, CopyPropagation.NAME);
+            case O2 -> List.of(ConstantFolding.NAME, CopyPropagation.NAME, DeadCodeElimination.NAME);
+        });
+    }
+
+    /**
+     * @param names 依次执行的各遍的名字, 同一个遍可以出现多次
+     * @return 依次执行这些遍的管理器
+     */
+    public static PassManager of(List<String> names) {
+        final var manager = new PassManager();
+        names.stream().map(PassManager::createPass).forEach(manager::addPass);
+        return manager;
+    }
+
+    public void addPass(IRPass pass) {
+        passes.add(pass);
+    }
+
+    /**
+     * @param names 执行后需要记录 IR 的遍的名字, 包含 {@link #ALL_PASSES} 时记录每个遍之后的 IR
+     */
+    public void setDumpAfter(Set<String> names) {
+        this.dumpAfter = Set.copyOf(names);
+    }
+
+    /**
+     * @return 是否没有任何遍
+     */
+    public boolean isEmpty() {
+        return passes.isEmpty();
+    }
+
+    /**
+     * 依次执行各遍
+     *
+     * @param instructions IR 生成的结果
+     * @return 变换后的 IR, 没有任何遍时就是参数本身
+     */
+    public List<Instruction> run(List<Instruction> instructions) {
+        var current = instructions;
+        for (final var pass : passes) {
+            final var before = current.size();
+            final var start = System.nanoTime();
+            current = pass.run(current);
+            statistics.add(new Statistics(pass.getName(), System.nanoTime() - start, before, current.size()));
+
+            if (dumpAfter.contains(ALL_PASSES) || dumpAfter.contains(pass.getName())) {
+                dumpedIR.add("# after %s (#%d)".formatted(pass.getName(), statistics.size()));
+                current.stream().map(Instruction::toString).forEach(dumpedIR::add);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return 各遍按执行顺序的统计
+     */
+    public List<Statistics> getStatistics() {
+        return List.copyOf(statistics);
+    }
+
+    /**
+     * @return 各遍的耗时与指令条数变化的表格, 最后一行为合计
+     */
+    public List<String> dumpStatistics() {
+        final var lines = new ArrayList<String>();
+        final var format = "%-12s %12s %10s %10s %10s";
+        lines.add(format.formatted("pass", "time(ms)", "before", "after", "delta"));
+        var total = 0L;
+        for (final var entry : statistics) {
+            lines.add(format.formatted(entry.pass(), "%.3f".formatted(entry.nanos() / 1e6),
+                entry.before(), entry.after(), "%+d".formatted(entry.after() - entry.before())));
+            total += entry.nanos();
+        }
+        if (!statistics.isEmpty()) {
+            final var first = statistics.get(0).before();
+            final var last = statistics.get(statistics.size() - 1).after();
+            lines.add(format.formatted("total", "%.3f".formatted(total / 1e6), first, last, "%+d".formatted(last - first)));
+        }
+        return lines;
+    }
+
+    /**
+     * @return 指定的各遍之后的 IR, 每段以 "# after 遍名" 开头
+     */
+    public List<String> dumpIR() {
+        return List.copyOf(dumpedIR);
+    }
+
+    private final List<IRPass> passes = new ArrayList<>();
+    private Set<String> dumpAfter = Set.of();
+    private final List<Statistics> statistics = new ArrayList<>();
+    private final List<String> dumpedIR = new ArrayList<>();
+}
@@ -3,9 +3,15 @@ package cn.edu.hitsz.compiler.lexer;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
-import java.io.*;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.stream.StreamSupport;
 
 /**
@@ -18,25 +24,53 @@ import java.util.stream.StreamSupport;
  */
 public class LexicalAnalyzer {
     private final SymbolTable symbolTable;
-    private final List<Token> tokens;
-    private BufferedReader reader;
+    private TokenBuffer tokens;
+    // 整个源文件的内容, 以只读方式映射到内存中, 由下标直接访问
+    private ByteBuffer source;
+    // 下一个待分析字符的下标
+    private int pos;
+    private final LexicalDFA dfa;
+    // scan 识别出的词素的起始下标
+    private int lexemeBegin;
+    // scan 识别出标识符或关键字时, 其文本与对应的关键字 (不是关键字时为 null)
+    private String lexemeText;
+    private Token keyword;
+    // 按需分析模式: run 不再分析整个文件, 而是在语法分析器向迭代器索取下一个 token 时才识别它
+    private boolean streaming = false;
+    // 按需分析模式下是否仍然保存分析出的 token 列表, 以供 dumpTokens 使用
+    private boolean keepTokens = true;
+    // 按需分析模式下是否已经分析到了 EOF
+    private boolean finished = false;
+    private boolean iterated = false;
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
-        this.tokens = new LinkedList<>();
+        this.dfa = LexicalDFA.getInstance();
     }
 
 
     /**
      * 从给予的路径中读取并加载文件内容
+     * <br>
+     * 文件通过 {@link FileChannel#map} 一次性映射到内存, 之后的分析过程只移动下标, 不再逐字符调用流的 read/mark/reset
      *
      * @param path 路径
      */
     public void loadFile(String path) throws IOException{
-        // 可自由实现各类缓冲区
-        // 或直接采用完整读入方法
-        InputStreamReader streamReader = new InputStreamReader(new FileInputStream(path));
-        reader = new BufferedReader(streamReader);
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            // 映射在 channel 关闭后依然有效
+            loadSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * 加载已经在内存中的源代码, 如不是来自文件的源代码
+     *
+     * @param source 源代码的内容, 分析时按下标读取, 不会改变其位置
+     */
+    public void loadSource(ByteBuffer source) {
+        this.source = source;
+        tokens = new TokenBuffer(source);
     }
 
     /**
@@ -44,83 +78,151 @@ public class LexicalAnalyzer {
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() throws IOException{
-        int state=0;
-        StringBuilder tokenStr= null;
-        for (char c=(char)reader.read();c!='\uffff';c=(char)reader.read()){
-            boolean blank = c==' ' || c=='\t' || c=='\n' || c=='\r';
-            boolean letter = 'a'<=c && c<='z' || 'A'<=c && c<='Z' || c=='_';
-            boolean digit = '0'<=c && c<='9';
-            int nextState;
-            // 实现状态转换
-            switch (state){
-                case 0 -> {
-                    if (blank) nextState=0;
-                    else if (letter) {
-                        nextState=5;
-                        tokenStr = new StringBuilder("" + c);
-                    }else if (digit) {
-                        nextState = 23;
-                        tokenStr = new StringBuilder("" + c);
-                    }
-                    else nextState = switch (c){
-                             case '=' -> 14;
-                             case ',' -> 15;
-                             case ';' -> 16;
-                             case '+' -> 17;
-                             case '-' -> 18;
-                             case '*' -> 19;
-                             case '/' -> 20;
-                             case '(' -> 21;
-                             case ')' -> 22;
-                             default -> throw new RuntimeException("Unknown character!");
-                        };
+        pos = 0;
+        if (streaming) {
+            // 真正的分析推迟到 getTokens 返回的迭代器中进行
+            return;
+        }
+
+        int state;
+        do {
+            state = scan();
+            record(state);
+        } while (state != LexicalDFA.START);
+    }
+
+    /**
+     * 设置按需分析模式, 需要在 run 之前调用
+     * <br>
+     * 按需分析时 run 只做准备工作, getTokens 返回的 Iterable 只能迭代一次, 每次 next 才识别下一个 token,
+     * 这样语法分析可以与词法分析交替进行, 且不必在内存中保存整个 token 列表.
+     * 需要注意的是, 在语法分析结束之前符号表中的条目是不完整的.
+     *
+     * @param streaming  是否按需分析
+     * @param keepTokens 按需分析时是否仍保存 token 列表; 若不保存, 则不能调用 dumpTokens
+     */
+    public void setStreaming(boolean streaming, boolean keepTokens) {
+        this.streaming = streaming;
+        this.keepTokens = keepTokens;
+    }
+
+    /**
+     * 从 pos 开始按最长匹配识别下一个词素, 并维护符号表
+     * <br>
+     * 标点前缀树的中间结点不一定是接受状态 (如只有 {@code <} 与 {@code <<=} 时的 {@code <<}),
+     * 因此没有转移时若停在非接受的标点状态, 回退到最近一次经过的接受状态.
+     *
+     * @return 识别结束时 DFA 所处的状态, 读到文件尾时为 {@link LexicalDFA#START}
+     */
+    private int scan() {
+        final int length = source.limit();
+        int state = LexicalDFA.START;
+        lexemeBegin = pos;
+        // 最近一次经过的接受的标点状态, 以及此时 pos 的位置
+        int lastAccepting = LexicalDFA.NONE;
+        int lastAcceptingPos = pos;
+        while (true) {
+            final char c = pos < length ? (char) (source.get(pos) & 0xff) : LexicalDFA.EOF_CHAR;
+            final int cls = dfa.classOf(c);
+            final int next = dfa.next(state, cls);
+            if (next != LexicalDFA.NONE) {
+                state = next;
+                pos++;
+                // 跳过的空白不属于任何词素
+                if (state == LexicalDFA.START) {
+                    lexemeBegin = pos;
+                } else if (dfa.simpleToken(state) != null) {
+                    lastAccepting = state;
+                    lastAcceptingPos = pos;
                 }
-                case 5 -> {
-                    if (letter||digit) {
-                        nextState = 5;
-                        tokenStr.append(c);
+                continue;
+            }
+
+            // 没有转移, 当前字符不属于该词素, 由当前状态决定识别出的词法单元
+            switch (state) {
+                case LexicalDFA.START -> {
+                    if (cls != LexicalDFA.END) {
+                        throw new RuntimeException("Unknown character!");
                     }
-                    else nextState=6;
                 }
-                case 23 -> {
-                    if (digit) {
-                        nextState = 23;
-                        tokenStr.append(c);
-                    }
-                    else nextState=24;
+                case LexicalDFA.IDENTIFIER -> {
+                    lexemeText = text(lexemeBegin, pos);
+                    keyword = dfa.keyword(lexemeText);
+                    // 维护符号表
+                    if (keyword == null && !symbolTable.has(lexemeText)) symbolTable.add(lexemeText);
                 }
-                // 这里不应遇到终止状态
-                case 6,14,15,16,17,18,19,20,21,22,24 -> throw new RuntimeException("Unexpected End State"+state);
-                default -> throw new RuntimeException("Unknown State"+state);
-            }
-            // 终止状态不再接受字符，应立即跳转至0
-            state=0;
-            switch (nextState){
-                case 6 -> {
-                    String s = tokenStr.toString();
-                    switch (s){
-                        case "int" -> tokens.add(Token.normal("int",""));
-                        case "return" -> tokens.add(Token.normal("return",""));
-                        default -> {
-                            tokens.add(Token.normal("id", s));
-                            // 维护符号表
-                            if (!symbolTable.has(s)) symbolTable.add(s);
+                case LexicalDFA.INT_CONST -> {
+                }
+                default -> {
+                    if (dfa.simpleToken(state) == null) {
+                        if (lastAccepting == LexicalDFA.NONE) {
+                            throw new RuntimeException("Unknown character!");
                         }
+                        state = lastAccepting;
+                        pos = lastAcceptingPos;
                     }
-                    reader.reset();
                 }
-                case 24 -> {
-                    tokens.add(Token.normal("IntConst", tokenStr.toString()));
-                    reader.reset();
+            }
+            return state;
+        }
+    }
+
+    /**
+     * 将 scan 识别出的词法单元加入 token 列表
+     *
+     * @param state scan 的返回值
+     */
+    private void record(int state) {
+        final var length = pos - lexemeBegin;
+        switch (state) {
+            case LexicalDFA.START -> tokens.add(TokenKind.eof(), lexemeBegin, 0);
+            case LexicalDFA.IDENTIFIER -> {
+                if (keyword != null) {
+                    tokens.add(keyword.getKind(), lexemeBegin, length);
+                } else {
+                    tokens.addIdentifier(dfa.accept(state), lexemeBegin, length, lexemeText);
                 }
-                case 16 -> tokens.add(Token.normal("Semicolon",""));
-                case 14,15,17,18,19,20,21,22 -> tokens.add(Token.normal(""+c,""));
-                // 非终止状态正常跳转
-                default -> state=nextState;
             }
-        reader.mark(1);
+            case LexicalDFA.INT_CONST -> tokens.addConstant(dfa.accept(state), lexemeBegin, length, value(lexemeBegin, pos));
+            default -> tokens.add(dfa.accept(state), lexemeBegin, length);
+        }
+    }
+
+    /**
+     * @param state scan 的返回值
+     * @return scan 识别出的词法单元
+     */
+    private Token toToken(int state) {
+        return switch (state) {
+            case LexicalDFA.START -> Token.eof();
+            case LexicalDFA.IDENTIFIER -> keyword != null ? keyword : Token.normal(dfa.accept(state), lexemeText);
+            case LexicalDFA.INT_CONST -> Token.normal(dfa.accept(state), text(lexemeBegin, pos));
+            default -> dfa.simpleToken(state);
+        };
+    }
+
+    /**
+     * 解析源文件中 [begin, end) 范围内的十进制整数常量
+     */
+    private int value(int begin, int end) {
+        int value = 0;
+        try {
+            for (int i = begin; i < end; i++) {
+                value = Math.addExact(Math.multiplyExact(value, 10), source.get(i) - '0');
+            }
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Integer constant out of range: " + text(begin, end), e);
         }
-        tokens.add(Token.eof());
+        return value;
+    }
+
+    /**
+     * 取出源文件中 [begin, end) 范围内的文本, 词素只可能由 ASCII 字符组成
+     */
+    private String text(int begin, int end) {
+        final var bytes = new byte[end - begin];
+        source.get(begin, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
     }
 
     /**
@@ -132,14 +234,58 @@ public class LexicalAnalyzer {
         // 词法分析过程可以使用 Stream 或 Iterator 实现按需分析
         // 亦可以直接分析完整个文件
         // 总之实现过程能转化为一列表即可
-        return tokens;
+        if (!streaming) {
+            return tokens;
+        }
+
+        if (finished) {
+            if (!keepTokens) {
+                throw new RuntimeException("Tokens are not kept in streaming mode");
+            }
+            return tokens;
+        }
+
+        return this::streamingIterator;
+    }
+
+    private Iterator<Token> streamingIterator() {
+        // 分析位置只有一份, 同时只能有一个迭代器推进它
+        if (iterated) {
+            throw new RuntimeException("Token stream can only be iterated once");
+        }
+        iterated = true;
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !finished;
+            }
+
+            @Override
+            public Token next() {
+                if (finished) {
+                    throw new NoSuchElementException();
+                }
+
+                final var state = scan();
+                if (keepTokens) {
+                    record(state);
+                }
+                finished = state == LexicalDFA.START;
+                return toToken(state);
+            }
+        };
     }
 
     public void dumpTokens(String path) {
-        FileUtils.writeLines(
-            path,
-            StreamSupport.stream(getTokens().spliterator(), false).map(Token::toString).toList()
-        );
+        FileUtils.writeLines(path, dumpLines());
+    }
+
+    /**
+     * @return 词法单元流的输出内容, 每个词法单元一行
+     */
+    public List<String> dumpLines() {
+        return StreamSupport.stream(getTokens().spliterator(), false).map(Token::toString).toList();
     }
 
 
@@ -0,0 +1,205 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 由码点文件 (coding_map.csv) 中的词法单元类型构造出的表驱动 DFA
+ * <br>
+ * 码点文件中的词法单元类型被分为四类:
+ * <ul>
+ *     <li>id 与 IntConst: 分别对应标识符状态与整数常量状态</li>
+ *     <li>形如标识符的其它类型 (如 int, return): 作为关键字, 在标识符被识别后再查表区分</li>
+ *     <li>以名字表示的标点 (如 Semicolon): 其拼写由 {@link #NAMED_PUNCTUATORS} 给出</li>
+ *     <li>其余类型: 其标识符本身就是拼写, 按字符插入到一棵前缀树中, 树上的每个结点都是 DFA 的一个状态</li>
+ * </ul>
+ * 转移表 {@code transition[state][charClass]} 与接受表 {@code accept[state]} 都只在第一次使用时构造一次,
+ * 之后词法分析的主循环只需要数组下标访问. 码点文件中新增的标点无需改动代码即可被识别.
+ */
+final class LexicalDFA {
+    // 码点文件中不以自身拼写作为标识符的标点
+    private static final Map<String, String> NAMED_PUNCTUATORS = Map.of("Semicolon", ";");
+
+    //============================== 状态 ==============================
+    static final int START = 0;
+    static final int IDENTIFIER = 1;
+    static final int INT_CONST = 2;
+    // 没有转移
+    static final int NONE = -1;
+
+    //============================== 字符类别 ==============================
+    static final int OTHER = 0;
+    static final int BLANK = 1;
+    static final int LETTER = 2;
+    static final int DIGIT = 3;
+    // 文件尾
+    static final int END = 4;
+    // 各个标点字符的类别从此处开始依次编号
+    private static final int FIRST_PUNCTUATOR_CLASS = 5;
+
+    /**
+     * 文件尾在词法分析器中的字符表示
+     */
+    static final char EOF_CHAR = '\uffff';
+
+    private static LexicalDFA instance = null;
+
+    /**
+     * @return 由已读入的码点文件构造出的 DFA
+     */
+    static synchronized LexicalDFA getInstance() {
+        if (instance == null) {
+            instance = new LexicalDFA(TokenKind.allAllowedTokenKinds());
+        }
+
+        return instance;
+    }
+
+    private final int[] charClass = new int[128];
+    private final int[][] transition;
+    private final TokenKind[] accept;
+    // 不带文本的词法单元是不可变的, 每个接受状态预先构造一个以供复用
+    private final Token[] simpleTokens;
+    private final Map<String, Token> keywords = new HashMap<>();
+
+    private LexicalDFA(Map<String, TokenKind> kinds) {
+        // 先为所有字符分类
+        for (char c = 0; c < charClass.length; c++) {
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                charClass[c] = BLANK;
+            } else if ('a' <= c && c <= 'z' || 'A' <= c && c <= 'Z' || c == '_') {
+                charClass[c] = LETTER;
+            } else if ('0' <= c && c <= '9') {
+                charClass[c] = DIGIT;
+            }
+        }
+
+        // 收集所有标点的拼写, 并为出现在其中的字符分配类别
+        final var punctuators = new HashMap<String, TokenKind>();
+        for (final var entry : kinds.entrySet()) {
+            final var id = entry.getKey();
+            final var kind = entry.getValue();
+            if (kind.equals(TokenKind.eof()) || id.equals("id") || id.equals("IntConst")) {
+                continue;
+            }
+
+            final String spelling;
+            if (NAMED_PUNCTUATORS.containsKey(id)) {
+                spelling = NAMED_PUNCTUATORS.get(id);
+            } else if (isIdentifierLike(id)) {
+                keywords.put(id, Token.simple(kind));
+                continue;
+            } else {
+                spelling = id;
+            }
+
+            punctuators.put(spelling, kind);
+        }
+
+        int classCount = FIRST_PUNCTUATOR_CLASS;
+        for (final var spelling : punctuators.keySet()) {
+            for (final var c : spelling.toCharArray()) {
+                if (c >= charClass.length || charClass[c] != OTHER) {
+                    throw new RuntimeException("Illegal punctuator in coding map: " + spelling);
+                }
+            }
+        }
+        for (final var spelling : punctuators.keySet()) {
+            for (final var c : spelling.toCharArray()) {
+                if (charClass[c] == OTHER) {
+                    charClass[c] = classCount++;
+                }
+            }
+        }
+
+        // 构造状态: 起始, 标识符, 整数常量, 随后是标点前缀树上的结点
+        final var rows = new ArrayList<int[]>();
+        final var accepting = new ArrayList<TokenKind>();
+        for (int i = 0; i <= INT_CONST; i++) {
+            final var row = new int[classCount];
+            Arrays.fill(row, NONE);
+            rows.add(row);
+        }
+        accepting.add(null);
+        accepting.add(TokenKind.fromString("id"));
+        accepting.add(TokenKind.fromString("IntConst"));
+
+        rows.get(START)[BLANK] = START;
+        rows.get(START)[LETTER] = IDENTIFIER;
+        rows.get(START)[DIGIT] = INT_CONST;
+        rows.get(IDENTIFIER)[LETTER] = IDENTIFIER;
+        rows.get(IDENTIFIER)[DIGIT] = IDENTIFIER;
+        rows.get(INT_CONST)[DIGIT] = INT_CONST;
+
+        for (final var entry : punctuators.entrySet()) {
+            int state = START;
+            for (final var c : entry.getKey().toCharArray()) {
+                final var cls = charClass[c];
+                if (rows.get(state)[cls] == NONE) {
+                    final var row = new int[classCount];
+                    Arrays.fill(row, NONE);
+                    rows.get(state)[cls] = rows.size();
+                    rows.add(row);
+                    accepting.add(null);
+                }
+                state = rows.get(state)[cls];
+            }
+            accepting.set(state, entry.getValue());
+        }
+
+        this.transition = rows.toArray(new int[0][]);
+        this.accept = accepting.toArray(new TokenKind[0]);
+        this.simpleTokens = new Token[accept.length];
+        for (int state = INT_CONST + 1; state < accept.length; state++) {
+            if (accept[state] != null) {
+                simpleTokens[state] = Token.simple(accept[state]);
+            }
+        }
+    }
+
+    private static boolean isIdentifierLike(String id) {
+        return id.matches("[A-Za-z_][A-Za-z0-9_]*");
+    }
+
+    /**
+     * @param c 字符, 文件尾用 {@link #EOF_CHAR} 表示
+     * @return 该字符的类别
+     */
+    int classOf(char c) {
+        if (c < charClass.length) {
+            return charClass[c];
+        }
+        return c == EOF_CHAR ? END : OTHER;
+    }
+
+    /**
+     * @return 从 state 读入类别为 cls 的字符后转移到的状态, 没有转移时为 {@link #NONE}
+     */
+    int next(int state, int cls) {
+        return transition[state][cls];
+    }
+
+    /**
+     * @return 在 state 结束时识别出的词法单元类型, 不是接受状态时为 null
+     */
+    TokenKind accept(int state) {
+        return accept[state];
+    }
+
+    /**
+     * @return 在标点状态 state 结束时识别出的词法单元
+     */
+    Token simpleToken(int state) {
+        return simpleTokens[state];
+    }
+
+    /**
+     * @param text 识别出的标识符文本
+     * @return 若该文本是关键字, 返回对应的词法单元, 否则为 null
+     */
+    Token keyword(String text) {
+        return keywords.get(text);
+    }
+}
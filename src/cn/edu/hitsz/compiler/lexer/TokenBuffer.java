@@ -0,0 +1,252 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 以 "数组的结构体" 形式紧凑存储的词法单元序列
+ * <br>
+ * 第 i 个词法单元由以下几列的第 i 个元素共同表示, 而不是各自作为一个 Token 对象:
+ * <ul>
+ *     <li>codes: 类型的码点</li>
+ *     <li>offsets, lengths: 词素在源文件中的位置</li>
+ *     <li>values: 对标识符为其符号编号, 对整数常量为已经解析好的值, 其余为 0</li>
+ * </ul>
+ * 标识符的文本按符号编号只保存一份. 语法分析器与观察者通过 {@link #cursor()} 访问词法单元时不需要分配任何对象;
+ * 作为 {@code Iterable<Token>} 迭代时则会按需构造 Token, 以兼容 dumpTokens 等原有用法.
+ */
+public class TokenBuffer implements Iterable<Token> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ByteBuffer source;
+    private final int identifierCode;
+    private final int intConstCode;
+
+    private int size = 0;
+    private int[] codes = new int[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+
+    private final List<String> symbolNames = new ArrayList<>();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+
+    /**
+     * @param source 词法单元所在的源文件内容
+     */
+    TokenBuffer(ByteBuffer source) {
+        this.source = source;
+        this.identifierCode = TokenKind.fromString("id").getCode();
+        this.intConstCode = TokenKind.fromString("IntConst").getCode();
+    }
+
+    //============================== 写入 ==============================
+
+    /**
+     * 加入一个不带文本的词法单元 (标点, 关键字, EOF)
+     */
+    void add(TokenKind kind, int offset, int length) {
+        append(kind.getCode(), offset, length, 0);
+    }
+
+    /**
+     * 加入一个标识符
+     *
+     * @param name 标识符文本
+     */
+    void addIdentifier(TokenKind kind, int offset, int length, String name) {
+        var symbolId = symbolIds.get(name);
+        if (symbolId == null) {
+            symbolId = symbolNames.size();
+            symbolNames.add(name);
+            symbolIds.put(name, symbolId);
+        }
+        append(kind.getCode(), offset, length, symbolId);
+    }
+
+    /**
+     * 加入一个整数常量
+     *
+     * @param value 常量的值
+     */
+    void addConstant(TokenKind kind, int offset, int length, int value) {
+        append(kind.getCode(), offset, length, value);
+    }
+
+    private void append(int code, int offset, int length, int value) {
+        if (size == codes.length) {
+            final var capacity = size * 2;
+            codes = Arrays.copyOf(codes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        codes[size] = code;
+        offsets[size] = offset;
+        lengths[size] = length;
+        values[size] = value;
+        size++;
+    }
+
+    //============================== 读取 ==============================
+
+    /**
+     * @return 词法单元的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCode(int index) {
+        return codes[checkIndex(index)];
+    }
+
+    public TokenKind getKind(int index) {
+        return TokenKind.fromCode(getCode(index));
+    }
+
+    /**
+     * @return 第 index 个词法单元的文本, 与对应 Token 的 getText 相同
+     */
+    public String getText(int index) {
+        final var code = getCode(index);
+        if (code == identifierCode) {
+            return symbolNames.get(values[index]);
+        } else if (code == intConstCode) {
+            final var bytes = new byte[lengths[index]];
+            source.get(offsets[index], bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * @return 第 index 个词法单元 (必须是整数常量) 的值
+     */
+    public int getValue(int index) {
+        if (getCode(index) != intConstCode) {
+            throw new RuntimeException("Only IntConst could have a value");
+        }
+        return values[index];
+    }
+
+    /**
+     * @return 第 index 个词法单元 (必须是标识符) 的符号编号
+     */
+    public int getSymbolId(int index) {
+        if (getCode(index) != identifierCode) {
+            throw new RuntimeException("Only id could have a symbol");
+        }
+        return values[index];
+    }
+
+    /**
+     * @return 词素在源文件中的起始位置
+     */
+    public int getOffset(int index) {
+        return offsets[checkIndex(index)];
+    }
+
+    /**
+     * @return 词素的长度
+     */
+    public int getLength(int index) {
+        return lengths[checkIndex(index)];
+    }
+
+    /**
+     * @param symbolId 符号编号
+     * @return 该符号的文本
+     */
+    public String getSymbolName(int symbolId) {
+        return symbolNames.get(symbolId);
+    }
+
+    public Token getToken(int index) {
+        return Token.normal(getKind(index), getText(index));
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return index;
+    }
+
+    /**
+     * @return 指向第一个词法单元的游标, 游标移动时只改变其内部的下标
+     */
+    public TokenCursor cursor() {
+        return cursor(0);
+    }
+
+    /**
+     * @param from 游标起始的下标
+     * @return 指向第 from 个词法单元的游标
+     */
+    public TokenCursor cursor(int from) {
+        checkIndex(from);
+        return new TokenCursor() {
+            private int index = from;
+
+            @Override
+            public TokenKind getKind() {
+                return TokenBuffer.this.getKind(index);
+            }
+
+            @Override
+            public int getCode() {
+                return TokenBuffer.this.getCode(index);
+            }
+
+            @Override
+            public String getText() {
+                return TokenBuffer.this.getText(index);
+            }
+
+            @Override
+            public int getValue() {
+                return TokenBuffer.this.getValue(index);
+            }
+
+            @Override
+            public void advance() {
+                index++;
+            }
+
+            @Override
+            public Token toToken() {
+                return getToken(index);
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getToken(index++);
+            }
+        };
+    }
+}
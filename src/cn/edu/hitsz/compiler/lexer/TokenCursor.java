@@ -0,0 +1,88 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Iterator;
+
+/**
+ * 词法单元流上的游标
+ * <br>
+ * 游标本身是一个可复用的 "享元": 它始终指向流中的某一个词法单元, 通过 {@link #advance()} 移动到下一个,
+ * 读取当前词法单元的各项信息时不需要为每个词法单元构造 {@link Token} 对象. 语法分析器与各观察者可以直接使用它.
+ * <br>
+ * 需要注意游标的内容会随着 advance 改变, 若要在之后继续使用当前词法单元, 应调用 {@link #toToken()} 保存一份.
+ *
+ * @see TokenBuffer#cursor() 在紧凑存储的词法单元上的游标
+ */
+public interface TokenCursor {
+    /**
+     * @return 当前词法单元的类型
+     */
+    TokenKind getKind();
+
+    /**
+     * @return 当前词法单元的类型的码点
+     */
+    default int getCode() {
+        return getKind().getCode();
+    }
+
+    /**
+     * @return 当前词法单元的文本, 有可能为空字符串 (但恒不为 null)
+     */
+    String getText();
+
+    /**
+     * @return 当前整数常量 (IntConst) 的值
+     * @throws RuntimeException 当前词法单元不是整数常量
+     */
+    int getValue();
+
+    /**
+     * 移动到下一个词法单元. 当前词法单元为 EOF 时不应再调用此方法.
+     */
+    void advance();
+
+    /**
+     * @return 与当前词法单元内容相同的 Token 对象
+     */
+    Token toToken();
+
+    /**
+     * 将逐个产生 Token 对象的流包装成游标
+     *
+     * @param tokens 词法单元流, 必须以 EOF 结尾
+     * @return 指向第一个词法单元的游标
+     */
+    static TokenCursor of(Iterator<Token> tokens) {
+        return new TokenCursor() {
+            private Token current = tokens.next();
+
+            @Override
+            public TokenKind getKind() {
+                return current.getKind();
+            }
+
+            @Override
+            public String getText() {
+                return current.getText();
+            }
+
+            @Override
+            public int getValue() {
+                if (!current.getKindId().equals("IntConst")) {
+                    throw new RuntimeException("Only IntConst could have a value");
+                }
+                return Integer.parseInt(current.getText());
+            }
+
+            @Override
+            public void advance() {
+                current = tokens.next();
+            }
+
+            @Override
+            public Token toToken() {
+                return current;
+            }
+        };
+    }
+}
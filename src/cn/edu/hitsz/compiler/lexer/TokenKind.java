@@ -29,13 +29,15 @@ public class TokenKind extends Term {
     // 允许用作 TokenKind 的 id 的字符串集合
     private static final Map<String, TokenKind> allowed = new HashMap<>();
     private static final TokenKind eof = new TokenKind("$", -1);
+    // 以码点 + 1 为下标的 TokenKind 数组, 供以码点紧凑存储词法单元的地方 (如 TokenBuffer) 还原类型
+    private static TokenKind[] byCode = new TokenKind[0];
 
     /**
-     * 从码点文件中读取允许的标识符集合
+     * 从码点文件中读取允许的标识符集合. 只有第一次调用会读取, 之后的调用直接返回, 因此每次编译都可以放心调用.
      */
-    public static void loadTokenKinds() {
+    public static synchronized void loadTokenKinds() {
         if (!allowed.isEmpty()) {
-            throw new RuntimeException("Can not set allowed twice");
+            return;
         }
 
         final var lines = FileUtils.readLines(FilePathConfig.CODING_MAP_PATH);
@@ -52,6 +54,12 @@ public class TokenKind extends Term {
 
         // EOF
         allowed.put("$", eof);
+
+        final var maxCode = allowed.values().stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        byCode = new TokenKind[maxCode + 2];
+        for (final var kind : allowed.values()) {
+            byCode[kind.getCode() + 1] = kind;
+        }
     }
 
     /**
@@ -86,6 +94,20 @@ public class TokenKind extends Term {
         return allowed.get(id);
     }
 
+    /**
+     * @param code 码点
+     * @return 具有该码点的 TokenKind
+     * @throws RuntimeException 码点文件尚未被读取, 或没有具有该码点的 TokenKind
+     */
+    public static TokenKind fromCode(int code) {
+        final var index = code + 1;
+        if (index < 0 || index >= byCode.length || byCode[index] == null) {
+            throw new RuntimeException("Illegal code: " + code);
+        }
+
+        return byCode[index];
+    }
+
     /**
      * @return 代表 EOF 的 TokenKind
      */
@@ -2,8 +2,10 @@ package cn.edu.hitsz.compiler.parser;
 
 
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.UnitChain;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 /**
@@ -32,6 +34,19 @@ public interface ActionObserver {
      */
     void whenShift(Status currentStatus, Token currentToken);
 
+    /**
+     * 当驱动程序执行 Shift 动作时实际调用的是此函数. 默认实现会为当前词法单元构造 Token 对象后调用
+     * {@link #whenShift(Status, Token)}; 观察者可以覆盖此函数, 直接从游标中读取所需的信息以避免构造对象.
+     * <br>
+     * 游标在函数返回后会继续移动, 观察者不应保存游标本身.
+     *
+     * @param currentStatus 当前的状态
+     * @param currentToken  指向当前词法单元的游标
+     */
+    default void whenShift(Status currentStatus, TokenCursor currentToken) {
+        whenShift(currentStatus, currentToken.toToken());
+    }
+
     /**
      * 当驱动程序执行 Reduce 动作时会调用此函数. Goto 到的新状态可以直接从参数中获取:
      * {@code currentStatus.getGoto(production.head()) }
@@ -41,6 +56,28 @@ public interface ActionObserver {
      */
     void whenReduce(Status currentStatus, Production production);
 
+    /**
+     * 询问观察者能否不逐个处理按该产生式的规约. 只有产生式体长度为 1 的产生式才会被询问.
+     * <br>
+     * 驱动程序开启跳过单产生式规约链的模式时, 只有所有观察者都对某个产生式返回 true, 按该产生式的规约才可能被跳过;
+     * 被跳过的规约不会调用 {@link #whenReduce}, 而是整串通过 {@link #whenBypass} 告知. 默认不允许跳过.
+     *
+     * @param production 产生式体长度为 1 的产生式
+     * @return 能否跳过按该产生式的规约
+     */
+    default boolean canBypass(Production production) {
+        return false;
+    }
+
+    /**
+     * 当驱动程序跳过一串单产生式规约时会调用此函数. 默认不做任何事.
+     *
+     * @param currentStatus 第一次规约时的状态
+     * @param chain         被跳过的规约
+     */
+    default void whenBypass(Status currentStatus, UnitChain chain) {
+    }
+
     /**
      * 当驱动程序执行 Accept 动作时会调用此函数.
      *
@@ -0,0 +1,294 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.UnitChain;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步的观察者流水线
+ * <br>
+ * LR 驱动程序同步地通知各观察者, 因此语法分析的耗时是所有观察者耗时之和. 把该类作为唯一的观察者注册到驱动程序上之后,
+ * 驱动程序的 shift/reduce/accept 事件只被写入一个预先分配好的环形缓冲区, 而被包装的每个观察者都在自己的线程上
+ * 依次消费这些事件. 每个观察者看到的事件顺序与同步通知时完全相同.
+ * <br>
+ * 缓冲区是单生产者多消费者的: 只有驱动程序所在的线程写入, 每个消费者维护自己已经处理到的序号,
+ * 生产者在最慢的消费者落后一整圈时等待. 驱动程序在 accept 时等待所有消费者处理完毕,
+ * 因此 {@link SyntaxAnalyzer#run()} 返回后即可像同步通知时一样读取各观察者的结果.
+ * 语法分析出错而没有 accept 时, 必须调用 {@link #close()} 使各消费者线程退出.
+ * <br>
+ * 被包装的观察者之间不能共享可变状态, 符号表除外.
+ */
+public class AsyncObserverPipeline implements ActionObserver, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 10_000;
+
+    private enum EventKind {Shift, Reduce, Bypass, Accept}
+
+    /**
+     * 环形缓冲区中的槽位, 被反复复用
+     */
+    private static final class Event {
+        EventKind kind;
+        Status status;
+        Token token;
+        Production production;
+        UnitChain chain;
+    }
+
+    private final List<ActionObserver> observers;
+    private final Event[] ring;
+    private final int mask;
+
+    // 生产者已经写入的最大序号
+    private final AtomicLong published = new AtomicLong(-1);
+    private long next = -1;
+    // 各消费者已经处理完的最大序号
+    private final AtomicLong[] consumed;
+    private long cachedMinConsumed = -1;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // 置位后, 消费者处理完已发布的事件就退出, 不再等待新事件
+    private volatile boolean closed = false;
+
+    public AsyncObserverPipeline(List<ActionObserver> observers) {
+        this(observers, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param observers 被包装的观察者
+     * @param capacity  环形缓冲区的容量, 必须是 2 的幂
+     */
+    public AsyncObserverPipeline(List<ActionObserver> observers, int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new RuntimeException("Capacity of ring buffer must be a power of two");
+        }
+
+        this.observers = List.copyOf(observers);
+        this.ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = capacity - 1;
+
+        this.consumed = new AtomicLong[this.observers.size()];
+        for (int i = 0; i < consumed.length; i++) {
+            consumed[i] = new AtomicLong(-1);
+        }
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        final var event = claim();
+        event.kind = EventKind.Shift;
+        event.status = currentStatus;
+        event.token = currentToken;
+        event.production = null;
+        event.chain = null;
+        publish();
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, TokenCursor currentToken) {
+        // 游标会继续移动, 消费者稍后才处理该事件, 因此必须保存当前词法单元
+        whenShift(currentStatus, currentToken.toToken());
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        final var event = claim();
+        event.kind = EventKind.Reduce;
+        event.status = currentStatus;
+        event.token = null;
+        event.production = production;
+        event.chain = null;
+        publish();
+    }
+
+    @Override
+    public boolean canBypass(Production production) {
+        for (final var observer : observers) {
+            if (!observer.canBypass(production)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void whenBypass(Status currentStatus, UnitChain chain) {
+        final var event = claim();
+        event.kind = EventKind.Bypass;
+        event.status = currentStatus;
+        event.token = null;
+        event.production = null;
+        event.chain = chain;
+        publish();
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        final var event = claim();
+        event.kind = EventKind.Accept;
+        event.status = currentStatus;
+        event.token = null;
+        event.production = null;
+        event.chain = null;
+        publish();
+
+        // 等待所有观察者处理完 accept 事件
+        joinConsumers();
+
+        final var exception = failure.get();
+        if (exception instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (exception instanceof Error error) {
+            throw error;
+        } else if (exception != null) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * 结束流水线. 各消费者处理完已发布的事件后退出, 该方法等待它们全部退出
+     * <br>
+     * 正常 accept 后调用没有任何效果; 语法分析出错时必须调用, 否则消费者线程会一直等待不会到来的 accept 事件.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        joinConsumers();
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+        // 符号表在分析开始前同步地交给各观察者
+        for (final var observer : observers) {
+            observer.setSymbolTable(table);
+        }
+    }
+
+    /**
+     * @return 下一个可写入的槽位, 必要时等待最慢的消费者腾出空间
+     */
+    private Event claim() {
+        if (threads.isEmpty()) {
+            start();
+        }
+
+        final var sequence = next + 1;
+        final var wrapPoint = sequence - ring.length;
+        int tries = 0;
+        while (cachedMinConsumed < wrapPoint) {
+            cachedMinConsumed = minConsumed();
+            if (cachedMinConsumed < wrapPoint) {
+                tries = idle(tries);
+            }
+        }
+
+        return ring[(int) sequence & mask];
+    }
+
+    private void publish() {
+        next++;
+        published.set(next);
+    }
+
+    private long minConsumed() {
+        long min = Long.MAX_VALUE;
+        for (final var sequence : consumed) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+
+    private void joinConsumers() {
+        for (final var thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted when waiting for observers", e);
+            }
+        }
+        threads.clear();
+    }
+
+    private void start() {
+        closed = false;
+        for (int i = 0; i < observers.size(); i++) {
+            final var observer = observers.get(i);
+            final var sequence = consumed[i];
+            sequence.set(next);
+            final var thread = new Thread(() -> consume(observer, sequence),
+                "observer-" + observer.getClass().getSimpleName());
+            // 调用者忘记 close 时也不应阻止进程退出
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        cachedMinConsumed = next;
+        threads.forEach(Thread::start);
+    }
+
+    private void consume(ActionObserver observer, AtomicLong sequence) {
+        long current = sequence.get();
+        int tries = 0;
+        try {
+            while (true) {
+                final var available = published.get();
+                if (available <= current) {
+                    if (closed) {
+                        // 看到 closed 后重新读取 published: close 之前发布的事件此时一定可见, 处理完它们才能退出
+                        if (published.get() <= current) {
+                            return;
+                        }
+                        continue;
+                    }
+                    tries = idle(tries);
+                    continue;
+                }
+                tries = 0;
+
+                while (current < available) {
+                    final var event = ring[(int) (current + 1) & mask];
+                    switch (event.kind) {
+                        case Shift -> observer.whenShift(event.status, event.token);
+                        case Reduce -> observer.whenReduce(event.status, event.production);
+                        case Bypass -> observer.whenBypass(event.status, event.chain);
+                        case Accept -> {
+                            observer.whenAccept(event.status);
+                            sequence.set(current + 1);
+                            return;
+                        }
+                    }
+                    current++;
+                }
+                sequence.set(current);
+            }
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            // 出错的消费者不再阻塞生产者
+            sequence.set(Long.MAX_VALUE);
+        }
+    }
+
+    private static int idle(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries + 1;
+    }
+}
@@ -0,0 +1,24 @@
+package cn.edu.hitsz.compiler.parser;
+
+/**
+ * 支持分块并行分析的观察者
+ * <br>
+ * 驱动程序把词法单元流在语句边界处切成若干块, 每块由各自的驱动程序与由 {@link #fork} 创建的观察者并行分析,
+ * 再由 {@link #join} 按源代码顺序合并回本观察者. 只有所有观察者都实现了该接口, 且 fork 都返回非 null 时, 驱动程序才会分块分析.
+ */
+public interface ForkableObserver extends ActionObserver {
+    /**
+     * 创建一个新的观察者, 它只会收到某一块内的事件
+     *
+     * @return 处理一块事件的新观察者; 当前配置下无法分块时返回 null
+     */
+    ForkableObserver fork();
+
+    /**
+     * 把由 {@link #fork} 创建的观察者处理一块事件的结果接到本观察者已有的结果之后, 效果应与本观察者依次收到这些事件相同.
+     * 驱动程序按源代码顺序在同一个线程上调用此函数.
+     *
+     * @param chunk 由本观察者的 fork 创建, 且已经处理完一块事件的观察者
+     */
+    void join(ForkableObserver chunk);
+}
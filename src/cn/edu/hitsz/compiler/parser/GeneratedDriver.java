@@ -0,0 +1,41 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
+
+/**
+ * 由 {@link ParserCodeGenerator} 根据分析表生成的 LR 驱动程序
+ * <br>
+ * 生成的驱动程序把每个状态的动作都写死在代码中, 不再查表. 它只负责按表移进与规约, 状态与产生式都以编号告知 {@link Listener},
+ * 由 {@link SyntaxAnalyzer} 将其转换为对各观察者的通知.
+ */
+public interface GeneratedDriver {
+    /**
+     * 分析过程中的事件
+     */
+    interface Listener {
+        /**
+         * @param state 执行移进时的状态编号, 移进的词法单元就是游标当前指向的词法单元
+         */
+        void shift(int state);
+
+        /**
+         * @param state      执行规约时的状态编号
+         * @param production 规约的产生式编号
+         */
+        void reduce(int state, int production);
+
+        /**
+         * @param state 接受时的状态编号
+         */
+        void accept(int state);
+    }
+
+    /**
+     * 分析游标之后的全部词法单元, 直到接受为止
+     *
+     * @param cursor   指向第一个词法单元的游标
+     * @param listener 事件的接收者
+     * @throws RuntimeException 分析出错
+     */
+    void run(TokenCursor cursor, Listener listener);
+}
@@ -1,97 +1,116 @@
 package cn.edu.hitsz.compiler.parser;
 
-import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.TempCounter;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
-import cn.edu.hitsz.compiler.parser.table.Term;
+import cn.edu.hitsz.compiler.parser.table.UnitChain;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 
 /**
- *
+ * IR 生成
+ * <br>
+ * 其语义动作既可以挂到共用的 {@link SyntaxDirectedTranslator} 上, 也可以把该类单独注册为观察者,
+ * 此时它使用一个只挂有自己的语义动作的翻译器.
  */
-public class IRGenerator implements ActionObserver {
-    private final List<Instruction> IRs=new LinkedList<>();
+public class IRGenerator implements ForkableObserver, SemanticComponent {
+    // 生成时即以紧凑形式保存, 变量与立即数在加入时被驻留
+    private final IRBuffer IRs = new IRBuffer();
     private SymbolTable symbolTable;
-    private final Stack<IRValue> stkIRValue=new Stack<>();
-    // 保存所有变量名与IR变量的对应关系
-    private final Map<String,IRVariable> varMap = new HashMap<>();
+    // 单独作为观察者时使用的翻译器
+    private final SyntaxDirectedTranslator translator = new SyntaxDirectedTranslator();
+    // 临时变量的编号分配器
+    private final TempCounter temps;
+    // 分块分析时, 块内的临时变量使用块内的编号, 合并时再重新编号
+    private final boolean chunk;
+    private int chunkTempCount = 0;
+
+    public IRGenerator() {
+        this(TempCounter.shared());
+    }
+
+    /**
+     * @param temps 临时变量的编号分配器, 同一次编译的各部分应共用同一个
+     */
+    public IRGenerator(TempCounter temps) {
+        this(temps, false);
+    }
+
+    private IRGenerator(TempCounter temps, boolean chunk) {
+        this.temps = temps;
+        this.chunk = chunk;
+        attachTo(translator);
+    }
+
+    private IRVariable newTemp() {
+        return chunk ? IRVariable.temp(chunkTempCount++) : temps.next();
+    }
 
     @Override
-    public void whenShift(Status currentStatus, Token currentToken) {
-        switch (currentToken.getKind().getCode()){
-            // 变量入栈
-            case 51 -> stkIRValue.push(varMap.get(currentToken.getText()));
-            // 整数常量（立即数）入栈
-            case 52 -> stkIRValue.push(
-                    IRImmediate.of(Integer.parseInt(currentToken.getText())));
-            // 那些不代表任何值的token，用null入栈
-            default -> stkIRValue.push(null);
+    public void attachTo(SyntaxDirectedTranslator translator) {
+        translator.attach(6, (stack, base) -> { // S -> id = E;
+            IRs.add(Instruction.createMov((IRVariable) stack.get(base), (IRValue) stack.get(base + 2)));
+            return null;
+        });
+        translator.attach(7, (stack, base) -> { // S -> return E;
+            IRs.add(Instruction.createRet((IRValue) stack.get(base + 1)));
+            return null;
+        });
+        translator.attach(8, (stack, base) -> { // E -> E + A;
+            var res = newTemp();
+            IRs.add(Instruction.createAdd(res, (IRValue) stack.get(base), (IRValue) stack.get(base + 2)));
+            return res;
+        });
+        translator.attach(9, (stack, base) -> { // E -> E - A;
+            var res = newTemp();
+            IRs.add(Instruction.createSub(res, (IRValue) stack.get(base), (IRValue) stack.get(base + 2)));
+            return res;
+        });
+        translator.attach(11, (stack, base) -> { // A -> A * B;
+            var res = newTemp();
+            IRs.add(Instruction.createMul(res, (IRValue) stack.get(base), (IRValue) stack.get(base + 2)));
+            return res;
+        });
+        // E->A; A->B; B->id; B->IntConst;
+        for (var index : List.of(10, 12, 14, 15)) {
+            translator.attach(index, SemanticAction.IDENTITY);
         }
+        translator.attach(13, (stack, base) -> stack.get(base + 1)); // B->(E);
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        translator.whenShift(currentStatus, currentToken);
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, TokenCursor currentToken) {
+        translator.whenShift(currentStatus, currentToken);
     }
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
-        switch (production.index()){
-            case 6 -> { // S -> id = E;
-                var E = stkIRValue.pop();
-                stkIRValue.pop();
-                var id = stkIRValue.pop();
-                assert id instanceof IRVariable;
-                IRs.add(Instruction.createMov((IRVariable) id,E));
-                stkIRValue.push(null);
-            }
-            case 7 -> { // S -> return E;
-                var E = stkIRValue.pop();
-                stkIRValue.pop();
-                IRs.add(Instruction.createRet(E));
-                stkIRValue.push(null);
-            }
-            case 8 -> { // E -> E + A;
-                var A = stkIRValue.pop();
-                stkIRValue.pop();
-                var E = stkIRValue.pop();
-                var res = IRVariable.temp();
-                IRs.add(Instruction.createAdd(res,E,A));
-                stkIRValue.push(res);
-            }
-            case 9 -> { // E -> E - A;
-                var A = stkIRValue.pop();
-                stkIRValue.pop();
-                var E = stkIRValue.pop();
-                var res = IRVariable.temp();
-                IRs.add(Instruction.createSub(res,E,A));
-                stkIRValue.push(res);
-            }
-            case 11 -> { // A -> A * B;
-                var B = stkIRValue.pop();
-                stkIRValue.pop();
-                var A = stkIRValue.pop();
-                var res = IRVariable.temp();
-                IRs.add(Instruction.createMul(res,A,B));
-                stkIRValue.push(res);
-            }
-            case 10,12,14,15 -> { // E->A; A->B; B->id; B->IntConst;
-                stkIRValue.push(stkIRValue.pop());
-            }
-            case 13 -> { // B->(E);
-                stkIRValue.pop();
-                var E = stkIRValue.pop();
-                stkIRValue.pop();
-                stkIRValue.push(E);
-            }
-            default -> {
-                production.body().forEach((Term term) -> stkIRValue.pop());
-                stkIRValue.push(null);
-            }
-        }
+        translator.whenReduce(currentStatus, production);
+    }
+
+    @Override
+    public boolean canBypass(Production production) {
+        return translator.canBypass(production);
+    }
+
+    @Override
+    public void whenBypass(Status currentStatus, UnitChain chain) {
+        translator.whenBypass(currentStatus, chain);
     }
 
 
@@ -102,16 +121,60 @@ public class IRGenerator implements ActionObserver {
     @Override
     public void setSymbolTable(SymbolTable table) {
         symbolTable=table;
-        symbolTable.getAllNames().forEach(
-                (var name) -> varMap.put(name,IRVariable.named(name)));
+        translator.setSymbolTable(table);
+    }
+
+    @Override
+    public IRGenerator fork() {
+        return new IRGenerator(temps, true);
     }
 
+    /**
+     * 块内的临时变量按创建顺序依次换成全局分配的临时变量. 各块按源代码顺序合并, 因此编号与顺序分析时相同.
+     */
+    @Override
+    public UnaryOperator<Object> merge(SemanticComponent chunk) {
+        final var other = (IRGenerator) chunk;
+        final var renamed = new HashMap<IRVariable, IRVariable>();
+        for (int i = 0; i < other.chunkTempCount; i++) {
+            renamed.put(IRVariable.temp(i), newTemp());
+        }
+        final UnaryOperator<IRValue> rename = value -> value instanceof IRVariable variable
+            ? renamed.getOrDefault(variable, variable) : value;
+        for (final var instruction : other.IRs.asList()) {
+            IRs.add(instruction.replaceValues(rename));
+        }
+        return value -> value instanceof IRValue irValue ? rename.apply(irValue) : value;
+    }
+
+    @Override
+    public void join(ForkableObserver chunk) {
+        final var other = (IRGenerator) chunk;
+        translator.appendAttributes(other.translator, merge(other));
+    }
+
+    /**
+     * @return 以 Instruction 形式访问生成的中间代码的只读视图
+     */
     public List<Instruction> getIR() {
+        return IRs.asList();
+    }
+
+    /**
+     * @return 以紧凑形式保存的中间代码
+     */
+    public IRBuffer getIRBuffer() {
         return IRs;
     }
 
+    /**
+     * @return 中间代码的输出内容, 每条指令一行
+     */
+    public List<String> dumpLines() {
+        return getIR().stream().map(Instruction::toString).toList();
+    }
+
     public void dumpIR(String path) {
-        FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
+        FileUtils.writeLines(path, dumpLines());
     }
 }
-
@@ -0,0 +1,325 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 由分析表生成专用的 Java 驱动程序
+ * <br>
+ * 查表驱动的主循环对每个词法单元都要查 action 表, 按动作种类分派, 再查 goto 表. 生成的驱动程序则为每个状态生成一个方法,
+ * 其中按词法单元类型的码点 switch, 各分支直接写死移进的目标状态或规约的产生式; 每条产生式也有一个方法, 写死了弹出的状态数与
+ * 规约后按状态 switch 的转移. 这样主循环中只剩下按状态分派到各个方法, JIT 可以把它们编译为直接的跳转.
+ * <br>
+ * 生成的源代码既可以写入文件预先编译, 也可以由 {@link #load} 在运行时用 javax.tools 编译并加载.
+ */
+public final class ParserCodeGenerator {
+    public static final String PACKAGE_NAME = "cn.edu.hitsz.compiler.parser.generated";
+    public static final String CLASS_NAME = "GeneratedParser";
+
+    /**
+     * 生成驱动程序的源代码
+     *
+     * @param table 分析表
+     * @return 类 {@value PACKAGE_NAME}.{@value CLASS_NAME} 的源代码
+     */
+    public static String generate(ParseTable table) {
+        return new ParserCodeGenerator(table).generate();
+    }
+
+    /**
+     * 生成驱动程序的源代码, 在运行时编译并加载
+     *
+     * @param table 分析表
+     * @return 生成的驱动程序
+     * @throws RuntimeException 当前运行环境没有 Java 编译器, 或编译失败
+     */
+    public static GeneratedDriver load(ParseTable table) {
+        return compile(generate(table));
+    }
+
+    private final ParseTable table;
+    private final int[] codes;
+    // 以产生式编号为下标, 得到产生式头的编号; 头相同的产生式共用一个 goto 方法
+    private final int[] headOf;
+    private final List<Integer> representativeOfHead = new ArrayList<>();
+    private final StringBuilder out = new StringBuilder();
+
+    private ParserCodeGenerator(ParseTable table) {
+        this.table = table;
+        this.codes = TokenKind.allAllowedTokenKinds().values().stream()
+            .mapToInt(TokenKind::getCode).sorted().toArray();
+
+        this.headOf = new int[table.getProductionCount() + 1];
+        final var heads = new HashMap<String, Integer>();
+        for (int production = 1; production <= table.getProductionCount(); production++) {
+            final var head = table.getProduction(production).head().getTermName();
+            final var index = heads.size();
+            final int finalProduction = production;
+            headOf[production] = heads.computeIfAbsent(head, h -> {
+                representativeOfHead.add(finalProduction);
+                return index;
+            });
+        }
+    }
+
+    private String generate() {
+        line(0, "package " + PACKAGE_NAME + ";");
+        line(0, "");
+        line(0, "import cn.edu.hitsz.compiler.lexer.TokenCursor;");
+        line(0, "import cn.edu.hitsz.compiler.parser.GeneratedDriver;");
+        line(0, "");
+        line(0, "import java.util.Arrays;");
+        line(0, "");
+        line(0, "/**");
+        line(0, " * 由 ParserCodeGenerator 根据 LR 分析表生成, 不要手动修改");
+        line(0, " */");
+        line(0, "public final class " + CLASS_NAME + " implements GeneratedDriver {");
+        line(1, "private TokenCursor cursor;");
+        line(1, "private Listener listener;");
+        line(1, "private int[] stack;");
+        line(1, "private int top;");
+        line(0, "");
+        line(1, "public " + CLASS_NAME + "() {");
+        line(1, "}");
+        line(0, "");
+        line(1, "private " + CLASS_NAME + "(TokenCursor cursor, Listener listener) {");
+        line(2, "this.cursor = cursor;");
+        line(2, "this.listener = listener;");
+        line(2, "this.stack = new int[64];");
+        line(2, "this.top = 0;");
+        line(2, "this.stack[0] = " + table.getInit() + ";");
+        line(1, "}");
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public void run(TokenCursor cursor, Listener listener) {");
+        line(2, "new " + CLASS_NAME + "(cursor, listener).loop();");
+        line(1, "}");
+        line(0, "");
+        line(1, "private void loop() {");
+        line(2, "while (true) {");
+        line(3, "final boolean running = switch (stack[top]) {");
+        for (int state = 0; state < table.getStatusCount(); state++) {
+            line(4, "case %d -> s%d();".formatted(state, state));
+        }
+        line(4, "default -> throw error();");
+        line(3, "};");
+        line(3, "if (!running) {");
+        line(4, "return;");
+        line(3, "}");
+        line(2, "}");
+        line(1, "}");
+        line(0, "");
+        line(1, "private void push(int state) {");
+        line(2, "if (++top == stack.length) {");
+        line(3, "stack = Arrays.copyOf(stack, top * 2);");
+        line(2, "}");
+        line(2, "stack[top] = state;");
+        line(1, "}");
+        line(0, "");
+        line(1, "private void shift(int state, int target) {");
+        line(2, "listener.shift(state);");
+        line(2, "push(target);");
+        line(2, "cursor.advance();");
+        line(1, "}");
+        line(0, "");
+        line(1, "private static RuntimeException error() {");
+        line(2, "return new RuntimeException(\"SyntaxAnalyzer: Error when parse\");");
+        line(1, "}");
+
+        for (int state = 0; state < table.getStatusCount(); state++) {
+            generateState(state);
+        }
+        for (int production = 1; production <= table.getProductionCount(); production++) {
+            generateReduce(production);
+        }
+        for (int head = 0; head < representativeOfHead.size(); head++) {
+            generateGoto(head);
+        }
+
+        line(0, "}");
+        return out.toString();
+    }
+
+    /**
+     * 状态方法: 按码点 switch, 返回 false 表示已接受
+     */
+    private void generateState(int state) {
+        // 动作相同的码点合并为同一个分支, 按第一次出现的顺序输出
+        final var codesOfAction = new LinkedHashMap<Integer, List<Integer>>();
+        for (final var code : codes) {
+            final var action = table.getAction(state, code);
+            if (CompiledLRTable.kindOf(action) != CompiledLRTable.ERROR) {
+                codesOfAction.computeIfAbsent(action, a -> new ArrayList<>()).add(code);
+            }
+        }
+
+        line(0, "");
+        line(1, "private boolean s%d() {".formatted(state));
+        line(2, "switch (cursor.getCode()) {");
+        for (final var entry : codesOfAction.entrySet()) {
+            final var action = entry.getKey();
+            final var labels = String.join(", ", entry.getValue().stream().map(String::valueOf).toList());
+            final var payload = CompiledLRTable.payloadOf(action);
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> line(3, "case %s -> shift(%d, %d);".formatted(labels, state, payload));
+                case CompiledLRTable.REDUCE -> line(3, "case %s -> r%d(%d);".formatted(labels, payload, state));
+                case CompiledLRTable.ACCEPT -> {
+                    line(3, "case %s -> {".formatted(labels));
+                    line(4, "listener.accept(%d);".formatted(state));
+                    line(4, "return false;");
+                    line(3, "}");
+                }
+                default -> throw new RuntimeException("Unknown action kind: " + action);
+            }
+        }
+        line(3, "default -> throw error();");
+        line(2, "}");
+        // 只有接受动作的状态中, 所有分支都已返回
+        final var acceptOnly = codesOfAction.keySet().stream()
+            .allMatch(action -> CompiledLRTable.kindOf(action) == CompiledLRTable.ACCEPT);
+        if (!acceptOnly) {
+            line(2, "return true;");
+        }
+        line(1, "}");
+    }
+
+    /**
+     * 规约方法: 通知, 弹出产生式体, 按露出的状态转移
+     */
+    private void generateReduce(int production) {
+        line(0, "");
+        line(1, "private void r%d(int state) {".formatted(production));
+        line(2, "listener.reduce(state, %d);".formatted(production));
+        final var length = table.getBodyLength(production);
+        if (length > 0) {
+            line(2, "top -= %d;".formatted(length));
+        }
+        line(2, "push(g%d(stack[top]));".formatted(headOf[production]));
+        line(1, "}");
+    }
+
+    /**
+     * goto 方法: 按露出的状态 switch, 得到规约出产生式头后的状态
+     */
+    private void generateGoto(int head) {
+        final var production = representativeOfHead.get(head);
+        // 目标相同的状态合并为同一个分支
+        final var statesOfTarget = new TreeMap<Integer, List<Integer>>();
+        for (int state = 0; state < table.getStatusCount(); state++) {
+            final var target = table.getGoto(state, production);
+            if (target >= 0) {
+                statesOfTarget.computeIfAbsent(target, t -> new ArrayList<>()).add(state);
+            }
+        }
+
+        line(0, "");
+        line(1, "// %s".formatted(table.getProduction(production).head()));
+        line(1, "private static int g%d(int state) {".formatted(head));
+        if (statesOfTarget.isEmpty()) {
+            // 开始符号不会出现在产生式体中, 没有任何转移
+            line(2, "throw error();");
+            line(1, "}");
+            return;
+        }
+        line(2, "return switch (state) {");
+        for (final var entry : statesOfTarget.entrySet()) {
+            final var labels = String.join(", ", entry.getValue().stream().map(String::valueOf).toList());
+            line(3, "case %s -> %d;".formatted(labels, entry.getKey()));
+        }
+        line(3, "default -> throw error();");
+        line(2, "};");
+        line(1, "}");
+    }
+
+    private void line(int indent, String text) {
+        if (!text.isEmpty()) {
+            out.append("    ".repeat(indent)).append(text);
+        }
+        out.append('\n');
+    }
+
+    //============================== 运行时编译 ==============================
+
+    /**
+     * 在运行时编译由 {@link #generate} 生成的源代码并加载
+     *
+     * @param source 生成的源代码
+     * @return 生成的驱动程序
+     * @throws RuntimeException 当前运行环境没有 Java 编译器, 或编译失败
+     */
+    public static GeneratedDriver compile(String source) {
+        final var compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("No Java compiler available in current runtime");
+        }
+
+        final var qualifiedName = PACKAGE_NAME + "." + CLASS_NAME;
+        final var sourceFile = new SimpleJavaFileObject(
+            URI.create("string:///" + qualifiedName.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+            JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        final var classes = new HashMap<String, ByteArrayOutputStream>();
+        final var standardManager = compiler.getStandardFileManager(null, null, null);
+        final JavaFileManager fileManager = new ForwardingJavaFileManager<>(standardManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        final var bytes = new ByteArrayOutputStream();
+                        classes.put(className, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+
+        final var diagnostics = new StringWriter();
+        final var options = List.of("-classpath", System.getProperty("java.class.path"), "-encoding", "UTF-8");
+        final var success = compiler.getTask(diagnostics, fileManager, null, options, null, List.of(sourceFile)).call();
+        if (!success) {
+            throw new RuntimeException("Failed to compile generated parser:\n" + diagnostics);
+        }
+
+        final var loader = new ClassLoader(GeneratedDriver.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                final var bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                final var code = bytes.toByteArray();
+                return defineClass(name, code, 0, code.length);
+            }
+        };
+
+        try {
+            return (GeneratedDriver) loader.loadClass(qualifiedName).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to load generated parser", e);
+        }
+    }
+}
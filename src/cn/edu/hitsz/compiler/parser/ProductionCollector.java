@@ -1,8 +1,10 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.UnitChain;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
@@ -15,7 +17,7 @@ import java.util.List;
  * 该类将自己注册为 LR 驱动程序的动作观察者, 在每次 reduce 将规约的产生式存起来, 待到语法分析结束之后便能按规约顺序输出所有规约到产生式.
  * 该类的输出结果会被作为判断实验二代码正误的根据.
  */
-public class ProductionCollector implements ActionObserver {
+public class ProductionCollector implements ForkableObserver {
     public ProductionCollector(Production beginProduction) {
         this.beginProduction = beginProduction;
     }
@@ -29,7 +31,14 @@ public class ProductionCollector implements ActionObserver {
      * @param path 文件路径
      */
     public void dumpToFile(String path) {
-        FileUtils.writeLines(path, reducedProductions.stream().map(Production::toString).toList());
+        FileUtils.writeLines(path, dumpLines());
+    }
+
+    /**
+     * @return 输出的内容, 按规约顺序每个产生式一行
+     */
+    public List<String> dumpLines() {
+        return reducedProductions.stream().map(Production::toString).toList();
     }
 
     @Override
@@ -38,11 +47,37 @@ public class ProductionCollector implements ActionObserver {
         reducedProductions.add(production);
     }
 
+    @Override
+    public boolean canBypass(Production production) {
+        // 被跳过的规约会随规约链一起告知, 仍能还原出完整的规约序列
+        return true;
+    }
+
+    @Override
+    public void whenBypass(Status currentStatus, UnitChain chain) {
+        reducedProductions.addAll(chain.productions());
+    }
+
+    @Override
+    public ProductionCollector fork() {
+        return new ProductionCollector(beginProduction);
+    }
+
+    @Override
+    public void join(ForkableObserver chunk) {
+        reducedProductions.addAll(((ProductionCollector) chunk).reducedProductions);
+    }
+
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
         // do nothing
     }
 
+    @Override
+    public void whenShift(Status currentStatus, TokenCursor currentToken) {
+        // do nothing
+    }
+
     @Override
     public void whenAccept(Status currentStatus) {
         // 当接受时, 记录下对起始产生式的规约
@@ -0,0 +1,33 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.utils.ValueStack;
+
+/**
+ * 挂在某条产生式上的语义动作, 在按该产生式规约时执行
+ * <br>
+ * 规约时产生式体中各符号的属性依次位于属性栈的 {@code [base, base + 产生式体长度)} 处. 语义动作只读取它们, 不应修改属性栈;
+ * 弹出产生式体的属性并压入产生式头的属性由 {@link SyntaxDirectedTranslator} 统一完成.
+ *
+ * @see SyntaxDirectedTranslator
+ */
+@FunctionalInterface
+public interface SemanticAction {
+    /**
+     * 不做任何事, 产生式头的属性为 null. 未挂语义动作的产生式使用此动作.
+     */
+    SemanticAction NONE = (attributes, base) -> null;
+
+    /**
+     * 产生式头的属性就是产生式体中唯一符号的属性, 用于 {@code A -> B} 这样的单产生式
+     */
+    SemanticAction IDENTITY = (attributes, base) -> attributes.get(base);
+
+    /**
+     * 执行语义动作
+     *
+     * @param attributes 属性栈
+     * @param base       产生式体第一个符号的属性在栈中的下标
+     * @return 产生式头的属性
+     */
+    Object apply(ValueStack<Object> attributes, int base);
+}
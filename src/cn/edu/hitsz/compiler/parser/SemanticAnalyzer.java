@@ -1,16 +1,38 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.UnitChain;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
-import java.util.Stack;
+import java.util.function.UnaryOperator;
 
-public class SemanticAnalyzer implements ActionObserver {
+/**
+ * 语义检查
+ * <br>
+ * 与 IRGenerator 相同, 其语义动作既可以挂到共用的 {@link SyntaxDirectedTranslator} 上, 也可以把该类单独注册为观察者.
+ */
+public class SemanticAnalyzer implements ForkableObserver, SemanticComponent {
     private SymbolTable symbolTable;
-    private final Stack<String> stkName =new Stack<>();
+    // 单独作为观察者时使用的翻译器
+    private final SyntaxDirectedTranslator translator = new SyntaxDirectedTranslator();
+
+    public SemanticAnalyzer() {
+        attachTo(translator);
+    }
+
+    @Override
+    public void attachTo(SyntaxDirectedTranslator translator) {
+        translator.attach(4, (stack, base) -> { // S -> D id;
+            var id = (IRVariable) stack.get(base + 1);
+            symbolTable.get(id.getName()).setType(SourceCodeType.Int);
+            return null;
+        });
+    }
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -18,23 +40,45 @@ public class SemanticAnalyzer implements ActionObserver {
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
-        if (production.index() == 4) { // S -> D id;
-            var id = stkName.pop();
-            stkName.pop();
-            symbolTable.get(id).setType(SourceCodeType.Int);
-        }else
-            production.body().forEach((var term) -> stkName.pop());
-        stkName.push(null);
+        translator.whenReduce(currentStatus, production);
+    }
+
+    @Override
+    public boolean canBypass(Production production) {
+        return translator.canBypass(production);
+    }
+
+    @Override
+    public void whenBypass(Status currentStatus, UnitChain chain) {
+        translator.whenBypass(currentStatus, chain);
     }
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
-        stkName.push(currentToken.getText());
+        translator.whenShift(currentStatus, currentToken);
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, TokenCursor currentToken) {
+        translator.whenShift(currentStatus, currentToken);
+    }
+
+    /**
+     * 声明直接写入共享的符号表. 声明只会把条目的类型设为 Int, 与执行顺序无关, 合并时无需再做任何事
+     */
+    @Override
+    public SemanticAnalyzer fork() {
+        return new SemanticAnalyzer();
+    }
+
+    @Override
+    public void join(ForkableObserver chunk) {
+        translator.appendAttributes(((SemanticAnalyzer) chunk).translator, UnaryOperator.identity());
     }
 
     @Override
     public void setSymbolTable(SymbolTable table) {
         symbolTable=table;
+        translator.setSymbolTable(table);
     }
 }
-
@@ -0,0 +1,43 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * 可以把自己的语义动作挂到 {@link SyntaxDirectedTranslator} 上的语义处理部件, 如语义检查与 IR 生成
+ */
+public interface SemanticComponent {
+    /**
+     * 把该部件的语义动作挂到翻译器对应的产生式上
+     *
+     * @param translator 翻译器
+     */
+    void attachTo(SyntaxDirectedTranslator translator);
+
+    /**
+     * 翻译器接受符号表时会调用此函数
+     *
+     * @param table 符号表
+     */
+    void setSymbolTable(SymbolTable table);
+
+    /**
+     * 为分块并行分析创建一个新的部件, 见 {@link ForkableObserver#fork}. 默认返回 null, 即不支持分块.
+     *
+     * @return 处理一块事件的新部件, 或 null
+     */
+    default SemanticComponent fork() {
+        return null;
+    }
+
+    /**
+     * 把由 {@link #fork} 创建的部件处理一块事件的结果接到本部件的结果之后
+     *
+     * @param chunk 由本部件的 fork 创建的部件
+     * @return 把该块中的属性值换成合并后对应的属性值的函数, 用于合并块末尾仍留在属性栈上的属性
+     */
+    default UnaryOperator<Object> merge(SemanticComponent chunk) {
+        return UnaryOperator.identity();
+    }
+}
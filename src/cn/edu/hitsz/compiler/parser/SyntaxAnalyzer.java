@@ -1,13 +1,18 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.*;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.IntStack;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -21,8 +26,25 @@ import java.util.Stack;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
-    private Iterator<Token> it_token;
-    private LRTable table;
+    private TokenCursor cursor;
+    private ParseTable table;
+    // 状态栈, 只保存状态编号; 在多次分析之间复用
+    private final IntStack stateStack = new IntStack();
+    // 是否跳过所有观察者都不需要的单产生式规约链, 以及据此构造的规约链表
+    private boolean bypassUnitChains = false;
+    private UnitChainTable chainTable = null;
+    // 由分析表生成的专用驱动程序, 未加载时使用查表的主循环
+    private GeneratedDriver generatedDriver = null;
+    // 分块并行分析时使用的词法单元; 只有词法单元已全部存入 TokenBuffer 时才能分块
+    private boolean parallelParse = false;
+    private TokenBuffer buffer = null;
+    // 分块分析时各块的驱动程序共享的取消标志, 合并遇到失败的块后置位, 使之后仍在运行的块尽快停止; 主驱动程序上为 null
+    private AtomicBoolean cancelled = null;
+
+    // 分块时每块至少包含的词法单元数, 过小的块的并行收益抵不上 fork 与合并的开销
+    private static final int MIN_CHUNK_TOKENS = 1 << 12;
+    // 每个工作线程平均分到的块数, 多分几块以平衡各块长度的差异
+    private static final int CHUNKS_PER_THREAD = 4;
 
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
@@ -37,6 +59,30 @@ public class SyntaxAnalyzer {
     public void registerObserver(ActionObserver observer) {
         observers.add(observer);
         observer.setSymbolTable(symbolTable);
+        chainTable = null;
+    }
+
+    /**
+     * 设置是否跳过单产生式规约链. 开启后, 对于所有观察者都允许跳过的单产生式 (见 {@link ActionObserver#canBypass}),
+     * 连续的规约会被合并为一步, 并通过 {@link ActionObserver#whenBypass} 通知观察者.
+     *
+     * @param bypassUnitChains 是否跳过
+     */
+    public void setBypassUnitChains(boolean bypassUnitChains) {
+        this.bypassUnitChains = bypassUnitChains;
+        chainTable = null;
+    }
+
+    /**
+     * 在跳过一串单产生式规约时通知各个观察者
+     *
+     * @param currentStatus 第一次规约时的状态
+     * @param chain         被跳过的规约
+     */
+    private void callWhenInBypass(Status currentStatus, UnitChain chain) {
+        for (final var listener : observers) {
+            listener.whenBypass(currentStatus, chain);
+        }
     }
 
     /**
@@ -51,6 +97,18 @@ public class SyntaxAnalyzer {
         }
     }
 
+    /**
+     * 在执行 shift 动作时通知各个观察者, 观察者可以直接从游标中读取而不必构造 Token
+     *
+     * @param currentStatus 当前状态
+     * @param currentToken  指向当前词法单元的游标
+     */
+    private void callWhenInShiftAt(Status currentStatus, TokenCursor currentToken) {
+        for (final var listener : observers) {
+            listener.whenShift(currentStatus, currentToken);
+        }
+    }
+
     /**
      * 在执行 reduce 动作时通知各个观察者
      *
@@ -75,45 +133,330 @@ public class SyntaxAnalyzer {
     }
 
     public void loadTokens(Iterable<Token> tokens) {
-        it_token=tokens.iterator();
+        // 紧凑存储的词法单元可以直接在其上移动游标, 不必为每个词法单元构造 Token
+        if (tokens instanceof TokenBuffer tokenBuffer) {
+            buffer = tokenBuffer;
+            cursor = tokenBuffer.cursor();
+        } else {
+            buffer = null;
+            cursor = TokenCursor.of(tokens.iterator());
+        }
+    }
+
+    /**
+     * 设置是否分块并行分析. 开启后, 若词法单元已全部存入 {@link TokenBuffer}, 且所有观察者都实现了 {@link ForkableObserver},
+     * 驱动程序会在顶层的分号处把词法单元流切成若干块, 由各自的驱动程序与观察者在 ForkJoinPool 上并行分析, 再按源代码顺序合并,
+     * 结果与顺序分析完全相同. 不满足条件时仍按顺序分析. 分块分析时不使用生成的驱动程序, 也不跳过单产生式规约链.
+     *
+     * @param parallelParse 是否分块并行分析
+     */
+    public void setParallelParse(boolean parallelParse) {
+        this.parallelParse = parallelParse;
     }
 
     public void loadLRTable(LRTable table) {
+        // 分析时只使用编译后的稠密表, 避免在主循环中对 Term 做哈希查找
+        loadLRTable(CompiledLRTable.compile(table));
+    }
+
+    /**
+     * 加载已经编译好的分析表, 多个驱动程序可以共享同一张编译后的表
+     *
+     * @param table 编译后的分析表, 可以是稠密表 {@link CompiledLRTable} 或压缩表 {@link CompressedLRTable}
+     */
+    public void loadLRTable(ParseTable table) {
         this.table=table;
+        chainTable = null;
+        generatedDriver = null;
+    }
+
+    /**
+     * 加载由 {@link ParserCodeGenerator} 根据当前分析表生成的驱动程序. 加载后 {@link #run} 改由它执行分析,
+     * 但跳过单产生式规约链时仍使用查表的主循环. 重新加载分析表会卸载该驱动程序.
+     *
+     * @param driver 根据当前分析表生成的驱动程序
+     */
+    public void loadGeneratedDriver(GeneratedDriver driver) {
+        this.generatedDriver = driver;
+    }
+
+    private UnitChainTable buildChainTable() {
+        return UnitChainTable.build(table, index -> {
+            final var production = table.getProduction(index);
+            return observers.stream().allMatch(observer -> observer.canBypass(production));
+        });
     }
 
     public void run() {
-        Stack<Status> stk_status = new Stack<>();
-        stk_status.add(table.getInit());
-        Stack<Term> stk_term = new Stack<>();
-        for (Token token = it_token.next();true;){
-            Status status = stk_status.peek();
-            Action action = table.getAction(status,token);
-            switch (action.getKind()) {
-                case Shift -> {
-                    callWhenInShift(status,token);
-                    stk_term.push(token.getKind());
-                    stk_status.push(action.getStatus());
-                    token = it_token.next();
+        if (parallelParse && buffer != null && runInChunks()) {
+            return;
+        }
+
+        if (generatedDriver != null && !bypassUnitChains) {
+            generatedDriver.run(cursor, new GeneratedDriver.Listener() {
+                @Override
+                public void shift(int state) {
+                    callWhenInShiftAt(table.getStatus(state), cursor);
+                }
+
+                @Override
+                public void reduce(int state, int production) {
+                    callWhenInReduce(table.getStatus(state), table.getProduction(production));
+                }
+
+                @Override
+                public void accept(int state) {
+                    callWhenInAccept(table.getStatus(state));
+                }
+            });
+            return;
+        }
+
+        if (bypassUnitChains && chainTable == null) {
+            chainTable = buildChainTable();
+        }
+        final var chains = bypassUnitChains ? chainTable : null;
+
+        stateStack.clear();
+        stateStack.push(table.getInit());
+        parse(chains);
+    }
+
+    /**
+     * 从当前的状态栈与游标开始分析, 直到接受为止
+     *
+     * @param chains 跳过单产生式规约链时使用的规约链表, 不跳过时为 null
+     */
+    private void parse(UnitChainTable chains) {
+        while (true){
+            int state = stateStack.peek();
+            int action = table.getAction(state, cursor.getCode());
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    callWhenInShiftAt(table.getStatus(state),cursor);
+                    stateStack.push(CompiledLRTable.payloadOf(action));
+                    cursor.advance();
                 }
-                case Reduce -> {
-                    Production production = action.getProduction();
-                    callWhenInReduce(status, production);
-                    List<Term> body = production.body();
-                    for (int i=body.size()-1;i>=0;i--) {
-                        assert body.get(i).equals(stk_term.peek());
-                        stk_term.pop();
-                        stk_status.pop();
+                case CompiledLRTable.REDUCE -> {
+                    int production = CompiledLRTable.payloadOf(action);
+                    if (chains != null && chains.isBypassable(production)) {
+                        // 可跳过的单产生式只弹出一个状态, 随后直接转移到整条规约链的终点
+                        stateStack.pop(1);
+                        final var chain = chains.get(stateStack.peek(), production, cursor.getCode());
+                        if (chain == null) {
+                            throw new RuntimeException("SyntaxAnalyzer: Error when parse");
+                        }
+                        callWhenInBypass(table.getStatus(state), chain);
+                        stateStack.push(chain.target());
+                        continue;
                     }
-                    stk_term.push(production.head());
-                    stk_status.push(table.getGoto(stk_status.peek(),production.head()));
+                    callWhenInReduce(table.getStatus(state), table.getProduction(production));
+                    stateStack.pop(table.getBodyLength(production));
+                    stateStack.push(table.getGoto(stateStack.peek(), production));
                 }
-                case Accept -> {
-                    callWhenInAccept(status);
+                case CompiledLRTable.ACCEPT -> {
+                    callWhenInAccept(table.getStatus(state));
                     return;
                 }
-                case Error -> throw new RuntimeException("SyntaxAnalyzer: Error when parse");
+                default -> throw new RuntimeException("SyntaxAnalyzer: Error when parse");
             }
         }
     }
+
+    /**
+     * 从当前的状态栈与游标开始分析, 移进 count 个词法单元后立即停止, 不再根据之后的词法单元做任何动作.
+     * 规约不会弹出栈底的状态; 若某次规约需要弹出栈底的状态, 则停在该规约之前.
+     *
+     * @param count 要移进的词法单元数
+     * @return 是否移进了全部词法单元; 分块分析被取消时为 false
+     */
+    private boolean parseSegment(int count) {
+        while (count > 0) {
+            if (cancelled != null && cancelled.get()) {
+                return false;
+            }
+            int state = stateStack.peek();
+            int action = table.getAction(state, cursor.getCode());
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    callWhenInShiftAt(table.getStatus(state), cursor);
+                    stateStack.push(CompiledLRTable.payloadOf(action));
+                    cursor.advance();
+                    count--;
+                }
+                case CompiledLRTable.REDUCE -> {
+                    int production = CompiledLRTable.payloadOf(action);
+                    if (table.getBodyLength(production) >= stateStack.size()) {
+                        return false;
+                    }
+                    callWhenInReduce(table.getStatus(state), table.getProduction(production));
+                    stateStack.pop(table.getBodyLength(production));
+                    stateStack.push(table.getGoto(stateStack.peek(), production));
+                }
+                default -> throw new RuntimeException("SyntaxAnalyzer: Error when parse");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 分块并行分析
+     * <br>
+     * LR 分析的每一步只取决于栈顶的若干状态. 第一条语句按顺序分析后, 栈顶的状态就是之后每条语句开始时的栈顶状态 (对于右递归的语句列表,
+     * 它是移进分号后的状态). 因此之后的每一块都可以由一个只含该状态的栈开始独立分析: 只要分析中没有弹出这个栈底状态,
+     * 且分析结束时栈顶又回到该状态, 它收到的事件就与顺序分析时完全相同, 剩下的栈接到前面的栈上即可.
+     * 各块按源代码顺序合并, 第一个不满足上述条件的块及其之后的部分改为顺序分析, 最后顺序分析到 EOF 完成剩余的规约与接受.
+     *
+     * @return 是否进行了分块分析; 为 false 时没有做任何事
+     */
+    private boolean runInChunks() {
+        final var threads = ForkJoinPool.getCommonPoolParallelism();
+        final var boundaries = splitStatements(buffer, threads * CHUNKS_PER_THREAD);
+        if (boundaries.length < 3) {
+            return false;
+        }
+
+        // 在主线程上一次性为每块 fork 出全部观察者, 任何一个观察者不支持时整体按顺序分析
+        final var forkables = new ArrayList<ForkableObserver>(observers.size());
+        for (final var observer : observers) {
+            if (!(observer instanceof ForkableObserver forkable)) {
+                return false;
+            }
+            forkables.add(forkable);
+        }
+        final var chunkCount = boundaries.length - 1;
+        final var chunkObservers = new ArrayList<List<ForkableObserver>>(chunkCount);
+        chunkObservers.add(forkables);
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            final var forked = new ArrayList<ForkableObserver>(forkables.size());
+            for (final var observer : forkables) {
+                final var child = observer.fork();
+                if (child == null) {
+                    return false;
+                }
+                forked.add(child);
+            }
+            chunkObservers.add(forked);
+        }
+
+        // 第一块只含第一条语句, 在本驱动程序上按顺序分析, 得到之后各块开始时的栈顶状态
+        stateStack.clear();
+        stateStack.push(table.getInit());
+        cursor = buffer.cursor(boundaries[0]);
+        if (!parseSegment(boundaries[1] - boundaries[0])) {
+            throw new RuntimeException("SyntaxAnalyzer: Error when parse");
+        }
+        final var entry = stateStack.peek();
+
+        final var pool = ForkJoinPool.commonPool();
+        final var cancelled = new AtomicBoolean(false);
+        final var tasks = new ArrayList<ForkJoinTask<SyntaxAnalyzer>>(chunkCount);
+        tasks.add(null);
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            final var from = boundaries[chunk];
+            final var count = boundaries[chunk + 1] - from;
+            final var analyzer = new SyntaxAnalyzer(symbolTable);
+            chunkObservers.get(chunk).forEach(analyzer::registerObserver);
+            analyzer.table = table;
+            analyzer.buffer = buffer;
+            analyzer.cancelled = cancelled;
+            tasks.add(pool.submit(() -> analyzer.parseChunk(entry, from, count) ? analyzer : null));
+        }
+
+        // 按源代码顺序合并各块. 各块的驱动程序与本驱动程序共享词法单元缓冲区与符号表, 在顺序分析开始前必须全部结束
+        var next = chunkCount;
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            SyntaxAnalyzer analyzer;
+            try {
+                analyzer = tasks.get(chunk).join();
+            } catch (RuntimeException e) {
+                // 块内的语法错误留给顺序分析在正确的位置报告
+                analyzer = null;
+            }
+            if (analyzer == null) {
+                next = chunk;
+                break;
+            }
+            final var merged = chunkObservers.get(chunk);
+            for (int i = 0; i < forkables.size(); i++) {
+                forkables.get(i).join(merged.get(i));
+            }
+            for (int i = 1; i < analyzer.stateStack.size(); i++) {
+                stateStack.push(analyzer.stateStack.get(i));
+            }
+        }
+        cancelled.set(true);
+        for (int chunk = next + 1; chunk < chunkCount; chunk++) {
+            tasks.get(chunk).quietlyJoin();
+        }
+
+        // 从第一个未合并的块开始顺序分析到 EOF
+        cursor = buffer.cursor(boundaries[next]);
+        parse(null);
+        return true;
+    }
+
+    /**
+     * 以只含 entry 的栈分析一块词法单元
+     *
+     * @return 分析是否没有弹出栈底状态, 且结束时栈顶回到 entry
+     */
+    private boolean parseChunk(int entry, int from, int count) {
+        stateStack.clear();
+        stateStack.push(entry);
+        cursor = buffer.cursor(from);
+        return parseSegment(count) && stateStack.peek() == entry;
+    }
+
+    /**
+     * 在顶层 (不在括号内) 的分号之后把词法单元流切成若干块. 第一块只含第一条语句, 其余的语句按词法单元数大致均分,
+     * 每块至少含 {@link #MIN_CHUNK_TOKENS} 个词法单元. 最后一个分号之后的部分 (至少有 EOF) 不属于任何块.
+     *
+     * @param tokens    词法单元
+     * @param maxChunks 除第一块外最多的块数
+     * @return 各块的起始下标, 最后一个元素为最后一块的结束下标
+     */
+    private static int[] splitStatements(TokenBuffer tokens, int maxChunks) {
+        final var semicolon = TokenKind.fromString("Semicolon").getCode();
+        final var leftParen = TokenKind.fromString("(").getCode();
+        final var rightParen = TokenKind.fromString(")").getCode();
+
+        final var statementEnds = new IntStack();
+        var depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            final var code = tokens.getCode(i);
+            if (code == leftParen) {
+                depth++;
+            } else if (code == rightParen) {
+                depth--;
+            } else if (code == semicolon && depth == 0) {
+                statementEnds.push(i + 1);
+            }
+        }
+        if (statementEnds.size() < 2) {
+            return new int[0];
+        }
+
+        final var first = statementEnds.get(0);
+        final var last = statementEnds.peek();
+        final var chunkTokens = Math.max(MIN_CHUNK_TOKENS, (last - first + maxChunks - 1) / Math.max(maxChunks, 1));
+
+        final var boundaries = new IntStack();
+        boundaries.push(0);
+        boundaries.push(first);
+        var start = first;
+        for (int i = 1; i < statementEnds.size(); i++) {
+            final var end = statementEnds.get(i);
+            if (end - start >= chunkTokens || end == last) {
+                boundaries.push(end);
+                start = end;
+            }
+        }
+
+        final var result = new int[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
 }
@@ -0,0 +1,205 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenCursor;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.UnitChain;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.ValueStack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * 语法制导翻译引擎
+ * <br>
+ * 各个观察者分别实现 ActionObserver 时, 每次规约都要依次调用每个观察者, 而每个观察者又各自对产生式编号做一次 switch,
+ * 并各自维护一个值栈. 翻译器则把各个语义部件的动作在开始时一次性挂到以产生式编号为下标的数组上,
+ * 所有动作共用同一个属性栈, 每次规约只需一次数组下标访问与一次调用.
+ * <br>
+ * 所有部件共享同一套属性定义: 标识符的属性为对应的 IRVariable, 整数常量的属性为对应的 IRImmediate,
+ * 其它终结符的属性为 null; 非终结符的属性由其产生式上的语义动作给出.
+ *
+ * @see SemanticAction
+ * @see SemanticComponent
+ */
+public class SyntaxDirectedTranslator implements ForkableObserver {
+    private final SemanticAction[] actions;
+    private final ValueStack<Object> attributes = new ValueStack<>();
+    private final List<SemanticComponent> components = new ArrayList<>();
+    // 保存所有变量名与IR变量的对应关系, 在变量第一次被移入时建立
+    private final Map<String, IRVariable> variables = new HashMap<>();
+    private ProductionCollector collector = null;
+
+    public SyntaxDirectedTranslator() {
+        final var productions = GrammarInfo.getProductionsInOrder();
+        final var maxIndex = productions.stream().mapToInt(Production::index).max().orElse(0);
+        this.actions = new SemanticAction[maxIndex + 1];
+        Arrays.fill(actions, SemanticAction.NONE);
+    }
+
+    /**
+     * 在产生式上挂一个语义动作. 若该产生式上已经有动作, 则先执行原有动作再执行新动作, 产生式头的属性取新动作的结果.
+     *
+     * @param productionIndex 产生式编号
+     * @param action          语义动作
+     */
+    public void attach(int productionIndex, SemanticAction action) {
+        final var previous = actions[productionIndex];
+        if (previous == SemanticAction.NONE) {
+            actions[productionIndex] = action;
+        } else {
+            actions[productionIndex] = (attributes, base) -> {
+                previous.apply(attributes, base);
+                return action.apply(attributes, base);
+            };
+        }
+    }
+
+    /**
+     * @param productionIndex 产生式编号
+     * @return 挂在该产生式上的语义动作
+     */
+    public SemanticAction getAction(int productionIndex) {
+        return actions[productionIndex];
+    }
+
+    /**
+     * 加入一个语义部件, 它的语义动作会被挂到翻译器上, 并与翻译器接收同一个符号表
+     *
+     * @param component 语义部件
+     */
+    public void addComponent(SemanticComponent component) {
+        components.add(component);
+        component.attachTo(this);
+    }
+
+    /**
+     * 让翻译器同时记录规约出的产生式, 从而不必将 ProductionCollector 单独注册为观察者
+     *
+     * @param collector 产生式收集器
+     */
+    public void setCollector(ProductionCollector collector) {
+        this.collector = collector;
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        switch (currentToken.getKind().getCode()) {
+            case 51 -> attributes.push(variables.computeIfAbsent(currentToken.getText(), IRVariable::named));
+            case 52 -> attributes.push(IRImmediate.of(Integer.parseInt(currentToken.getText())));
+            default -> attributes.push(null);
+        }
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, TokenCursor currentToken) {
+        switch (currentToken.getCode()) {
+            case 51 -> attributes.push(variables.computeIfAbsent(currentToken.getText(), IRVariable::named));
+            case 52 -> attributes.push(IRImmediate.of(currentToken.getValue()));
+            default -> attributes.push(null);
+        }
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        final var length = production.body().size();
+        final var base = attributes.size() - length;
+        final var value = actions[production.index()].apply(attributes, base);
+        attributes.pop(length);
+        attributes.push(value);
+
+        if (collector != null) {
+            collector.whenReduce(currentStatus, production);
+        }
+    }
+
+    /**
+     * 单产生式上挂的是 IDENTITY 时, 跳过规约后栈顶的属性不变, 与执行规约的结果相同;
+     * 没有挂语义动作时, 产生式头的属性不被任何动作使用, 保留产生式体的属性也无妨.
+     */
+    @Override
+    public boolean canBypass(Production production) {
+        final var action = actions[production.index()];
+        return (action == SemanticAction.IDENTITY || action == SemanticAction.NONE)
+            && (collector == null || collector.canBypass(production));
+    }
+
+    @Override
+    public void whenBypass(Status currentStatus, UnitChain chain) {
+        if (collector != null) {
+            collector.whenBypass(currentStatus, chain);
+        }
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        if (collector != null) {
+            collector.whenAccept(currentStatus);
+        }
+    }
+
+    /**
+     * 只有收集器与所有部件都支持分块时才能分块. 新翻译器带有各部件分别 fork 出的部件.
+     */
+    @Override
+    public SyntaxDirectedTranslator fork() {
+        final var forked = new SyntaxDirectedTranslator();
+        if (collector != null) {
+            forked.setCollector(collector.fork());
+        }
+        for (final var component : components) {
+            final var forkedComponent = component.fork();
+            if (forkedComponent == null) {
+                return null;
+            }
+            forked.addComponent(forkedComponent);
+        }
+        return forked;
+    }
+
+    @Override
+    public void join(ForkableObserver chunk) {
+        final var other = (SyntaxDirectedTranslator) chunk;
+        if (collector != null) {
+            collector.join(other.collector);
+        }
+        UnaryOperator<Object> relocate = UnaryOperator.identity();
+        for (int i = 0; i < components.size(); i++) {
+            final var merged = components.get(i).merge(other.components.get(i));
+            final var previous = relocate;
+            relocate = value -> merged.apply(previous.apply(value));
+        }
+        appendAttributes(other, relocate);
+    }
+
+    /**
+     * 把一块分析结束时仍留在属性栈上的属性接到本翻译器的属性栈上, 与驱动程序拼接状态栈的方式相同
+     *
+     * @param chunk    处理完一块事件的翻译器
+     * @param relocate 把块中的属性值换成合并后对应的属性值的函数
+     */
+    void appendAttributes(SyntaxDirectedTranslator chunk, UnaryOperator<Object> relocate) {
+        for (int i = 0; i < chunk.attributes.size(); i++) {
+            attributes.push(relocate.apply(chunk.attributes.get(i)));
+        }
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+        // 每次编译开始时都会接收符号表, 在此清空上一次编译留下的状态
+        attributes.clear();
+        variables.clear();
+        for (final var component : components) {
+            component.setSymbolTable(table);
+        }
+    }
+}
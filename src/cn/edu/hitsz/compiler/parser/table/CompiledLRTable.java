@@ -0,0 +1,260 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 由 LRTable 编译得到的不可变的稠密分析表
+ * <br>
+ * LRTable 中每个状态的 action/goto 都是以 Term 为键的 HashMap, 每次查表都要计算 Term 名字的哈希值.
+ * 编译后的表把状态, 终结符, 非终结符与产生式都换成了下标:
+ * <ul>
+ *     <li>action 表是以 {@code 状态 * 终结符列数 + 终结符列} 为下标的 int 数组, 每个元素的低 2 位为动作种类,
+ *     其余高位为移入的目标状态或规约的产生式编号</li>
+ *     <li>goto 表是以 {@code 状态 * 非终结符列数 + 非终结符列} 为下标的 int 数组, 没有转移时为 -1</li>
+ *     <li>终结符列由词法单元类型的码点直接查数组得到, 非终结符列则按产生式编号预先算好</li>
+ * </ul>
+ * 这样 LR 驱动程序的主循环中便不再有任何哈希运算. 无论 LRTable 来自 TableLoader 还是 TableGenerator, 都可以被编译.
+ */
+public final class CompiledLRTable implements ParseTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    /**
+     * 编译 LR 分析表
+     *
+     * @param table 分析表
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable compile(LRTable table) {
+        return new CompiledLRTable(table);
+    }
+
+    /**
+     * @param action 打包后的动作
+     * @return 动作种类, 为 ERROR, SHIFT, REDUCE, ACCEPT 之一
+     */
+    public static int kindOf(int action) {
+        return action & KIND_MASK;
+    }
+
+    /**
+     * @param action 打包后的动作
+     * @return 移入动作的目标状态, 或规约动作的产生式编号
+     */
+    public static int payloadOf(int action) {
+        return action >>> KIND_BITS;
+    }
+
+    static int pack(int kind, int payload) {
+        return payload << KIND_BITS | kind;
+    }
+
+    private final Status[] statuses;
+    private final Production[] productions;
+    private final int initState;
+
+    // 以 码点 + 1 为下标, 得到该终结符在 action 表中的列号, 不在表中时为 -1
+    private final int[] terminalColumnOfCode;
+    private final int terminalCount;
+    private final int[] actions;
+
+    private final int nonTerminalCount;
+    private final int[] gotos;
+
+    // 以产生式编号为下标, 得到产生式头在 goto 表中的列号与产生式体的长度
+    private final int[] headColumn;
+    private final int[] bodyLength;
+
+    private CompiledLRTable(LRTable table) {
+        final var statusList = table.getStatusInIndexOrder();
+        final var terminals = table.getTerminals();
+        final var nonTerminals = table.getNonTerminals();
+
+        this.statuses = new Status[statusList.size()];
+        for (final var status : statusList) {
+            if (status.index() < 0 || status.index() >= statuses.length || statuses[status.index()] != null) {
+                throw new RuntimeException("Status index of LR table must be dense: " + status.index());
+            }
+            statuses[status.index()] = status;
+        }
+        this.initState = table.getInit().index();
+
+        final var productionList = GrammarInfo.getProductionsInOrder();
+        this.productions = new Production[productionList.size() + 1];
+        for (final var production : productionList) {
+            productions[production.index()] = production;
+        }
+
+        // 终结符列
+        final var maxCode = terminals.stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        this.terminalColumnOfCode = new int[maxCode + 2];
+        Arrays.fill(terminalColumnOfCode, -1);
+        this.terminalCount = terminals.size();
+        for (int column = 0; column < terminalCount; column++) {
+            terminalColumnOfCode[terminals.get(column).getCode() + 1] = column;
+        }
+
+        // 非终结符列, 表中的非终结符与文法中的可能不是同一个对象, 按名字对应
+        this.nonTerminalCount = nonTerminals.size();
+        final var nonTerminalColumn = new HashMap<String, Integer>();
+        for (int column = 0; column < nonTerminalCount; column++) {
+            nonTerminalColumn.put(nonTerminals.get(column).getTermName(), column);
+        }
+
+        this.headColumn = new int[productions.length];
+        this.bodyLength = new int[productions.length];
+        Arrays.fill(headColumn, -1);
+        for (final var production : productionList) {
+            headColumn[production.index()] = nonTerminalColumn.getOrDefault(production.head().getTermName(), -1);
+            bodyLength[production.index()] = production.body().size();
+        }
+
+        // 填充 action 表与 goto 表
+        this.actions = new int[statuses.length * terminalCount];
+        this.gotos = new int[statuses.length * nonTerminalCount];
+        Arrays.fill(gotos, -1);
+        for (final var status : statuses) {
+            for (int column = 0; column < terminalCount; column++) {
+                actions[status.index() * terminalCount + column] = pack(status.getAction(terminals.get(column)));
+            }
+            for (int column = 0; column < nonTerminalCount; column++) {
+                final var target = status.getGoto(nonTerminals.get(column));
+                gotos[status.index() * nonTerminalCount + column] = target.isError() ? -1 : target.index();
+            }
+        }
+    }
+
+    //============================== 供压缩使用 ==============================
+
+    int[] terminalColumnOfCode() {
+        return terminalColumnOfCode;
+    }
+
+    int terminalCount() {
+        return terminalCount;
+    }
+
+    int nonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    /**
+     * @return 状态 state 在终结符列 column 上的打包动作
+     */
+    int actionAt(int state, int column) {
+        return actions[state * terminalCount + column];
+    }
+
+    /**
+     * @return 状态 state 在非终结符列 column 上的转移, 没有转移时为 -1
+     */
+    int gotoAt(int state, int column) {
+        return gotos[state * nonTerminalCount + column];
+    }
+
+    int[] headColumns() {
+        return headColumn;
+    }
+
+    int[] bodyLengths() {
+        return bodyLength;
+    }
+
+    Status[] statuses() {
+        return statuses;
+    }
+
+    Production[] productions() {
+        return productions;
+    }
+
+    private static int pack(Action action) {
+        return switch (action.getKind()) {
+            case Error -> pack(ERROR, 0);
+            case Shift -> pack(SHIFT, action.getStatus().index());
+            case Reduce -> pack(REDUCE, action.getProduction().index());
+            case Accept -> pack(ACCEPT, 0);
+        };
+    }
+
+    /**
+     * @return 起始状态
+     */
+    @Override
+    public int getInit() {
+        return initState;
+    }
+
+    /**
+     * @param state 当前状态
+     * @param code  当前词法单元类型的码点
+     * @return 打包后的动作, 用 {@link #kindOf} 与 {@link #payloadOf} 拆解
+     */
+    @Override
+    public int getAction(int state, int code) {
+        final var index = code + 1;
+        if (index < 0 || index >= terminalColumnOfCode.length) {
+            return pack(ERROR, 0);
+        }
+
+        final var column = terminalColumnOfCode[index];
+        return column < 0 ? pack(ERROR, 0) : actions[state * terminalCount + column];
+    }
+
+    /**
+     * @param state      规约后露出的栈顶状态
+     * @param production 规约的产生式编号
+     * @return 规约出产生式头后应转移到的状态, 没有转移时为 -1
+     */
+    @Override
+    public int getGoto(int state, int production) {
+        final var column = headColumn[production];
+        return column < 0 ? -1 : gotos[state * nonTerminalCount + column];
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式体的长度, 即规约时要弹出的状态数
+     */
+    @Override
+    public int getBodyLength(int production) {
+        return bodyLength[production];
+    }
+
+    /**
+     * @return 编号对应的状态对象, 用于通知观察者
+     */
+    @Override
+    public Status getStatus(int index) {
+        return statuses[index];
+    }
+
+    /**
+     * @return 编号对应的产生式对象, 用于通知观察者
+     */
+    @Override
+    public Production getProduction(int index) {
+        return productions[index];
+    }
+
+    /**
+     * @return 状态的数量
+     */
+    @Override
+    public int getStatusCount() {
+        return statuses.length;
+    }
+
+    @Override
+    public int getProductionCount() {
+        return productions.length - 1;
+    }
+}
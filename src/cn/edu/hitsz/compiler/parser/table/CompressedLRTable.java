@@ -0,0 +1,247 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 压缩存储的 LR 分析表
+ * <br>
+ * 稠密表中大部分单元格都是空的, 或者是同一个规约动作的重复. 压缩表只保存其中真正有区别的部分:
+ * <ul>
+ *     <li>每个状态有一个默认规约, 取该状态中出现次数最多的规约动作. 该状态中等于默认规约的单元格与空单元格都不再保存.
+ *     这会使驱动程序在遇到错误的词法单元时先做几次规约才报错, 但不会改变对正确输入的分析过程</li>
+ *     <li>每个非终结符列有一个默认转移, 取该列中出现次数最多的目标状态. goto 只会在规约之后查询, 因此列中的空单元格无需区分</li>
+ *     <li>剩下的 action 与 goto 单元格被看作同一行中的不同列 (goto 的列排在终结符列之后), 按行位移法 (comb vector)
+ *     互相错开地塞进共享的 next/check 数组: 状态 s 的第 c 列保存在 {@code next[base[s] + c]}, 当且仅当
+ *     {@code check[base[s] + c] == s} 时该单元格属于状态 s, 否则取默认值</li>
+ * </ul>
+ * 查询接口与 {@link CompiledLRTable} 完全相同, 可直接交给驱动程序使用.
+ */
+public final class CompressedLRTable implements ParseTable {
+    /**
+     * 压缩分析表
+     *
+     * @param table 稠密分析表
+     * @return 压缩后的分析表
+     */
+    public static CompressedLRTable compress(CompiledLRTable table) {
+        return new CompressedLRTable(table);
+    }
+
+    private final Status[] statuses;
+    private final Production[] productions;
+    private final int initState;
+
+    private final int[] terminalColumnOfCode;
+    private final int terminalCount;
+    private final int[] headColumn;
+    private final int[] bodyLength;
+
+    private final int[] defaultActions;
+    private final int[] defaultGotos;
+    private final int[] base;
+    private final int[] next;
+    private final int[] check;
+
+    private CompressedLRTable(CompiledLRTable table) {
+        this.statuses = table.statuses();
+        this.productions = table.productions();
+        this.initState = table.getInit();
+        this.terminalColumnOfCode = table.terminalColumnOfCode();
+        this.terminalCount = table.terminalCount();
+        this.headColumn = table.headColumns();
+        this.bodyLength = table.bodyLengths();
+
+        final var stateCount = statuses.length;
+        final var nonTerminalCount = table.nonTerminalCount();
+        final var columnCount = terminalCount + nonTerminalCount;
+
+        // 每个状态的默认规约
+        this.defaultActions = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            final var counts = new HashMap<Integer, Integer>();
+            var best = CompiledLRTable.pack(CompiledLRTable.ERROR, 0);
+            var bestCount = 0;
+            for (int column = 0; column < terminalCount; column++) {
+                final var action = table.actionAt(state, column);
+                if (CompiledLRTable.kindOf(action) == CompiledLRTable.REDUCE) {
+                    final var count = counts.merge(action, 1, Integer::sum);
+                    if (count > bestCount) {
+                        best = action;
+                        bestCount = count;
+                    }
+                }
+            }
+            defaultActions[state] = best;
+        }
+
+        // 每个非终结符列的默认转移
+        this.defaultGotos = new int[nonTerminalCount];
+        for (int column = 0; column < nonTerminalCount; column++) {
+            final var counts = new HashMap<Integer, Integer>();
+            var best = -1;
+            var bestCount = 0;
+            for (int state = 0; state < stateCount; state++) {
+                final var target = table.gotoAt(state, column);
+                if (target >= 0) {
+                    final var count = counts.merge(target, 1, Integer::sum);
+                    if (count > bestCount) {
+                        best = target;
+                        bestCount = count;
+                    }
+                }
+            }
+            defaultGotos[column] = best;
+        }
+
+        // 收集每行中与默认值不同的单元格
+        final var rowColumns = new int[stateCount][];
+        final var rowValues = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            final var columns = new int[columnCount];
+            final var values = new int[columnCount];
+            int size = 0;
+            for (int column = 0; column < terminalCount; column++) {
+                final var action = table.actionAt(state, column);
+                if (CompiledLRTable.kindOf(action) != CompiledLRTable.ERROR && action != defaultActions[state]) {
+                    columns[size] = column;
+                    values[size++] = action;
+                }
+            }
+            for (int column = 0; column < nonTerminalCount; column++) {
+                final var target = table.gotoAt(state, column);
+                if (target >= 0 && target != defaultGotos[column]) {
+                    columns[size] = terminalCount + column;
+                    values[size++] = target;
+                }
+            }
+            rowColumns[state] = Arrays.copyOf(columns, size);
+            rowValues[state] = Arrays.copyOf(values, size);
+        }
+
+        // 按单元格数从多到少, 为每行找到第一个不与已放置的行冲突的位移
+        final var order = new Integer[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            order[state] = state;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(rowColumns[b].length, rowColumns[a].length));
+
+        this.base = new int[stateCount];
+        var owner = new int[Math.max(columnCount, 16)];
+        Arrays.fill(owner, -1);
+        var used = 0;
+        for (final int state : order) {
+            final var columns = rowColumns[state];
+            if (columns.length == 0) {
+                continue;
+            }
+
+            int offset = 0;
+            while (!fits(owner, columns, offset)) {
+                offset++;
+            }
+
+            final var last = offset + columns[columns.length - 1] + 1;
+            if (last > owner.length) {
+                final var oldLength = owner.length;
+                owner = Arrays.copyOf(owner, Math.max(last, oldLength * 2));
+                Arrays.fill(owner, oldLength, owner.length, -1);
+            }
+            for (final var column : columns) {
+                owner[offset + column] = state;
+            }
+            base[state] = offset;
+            used = Math.max(used, last);
+        }
+
+        // 留出一整行的余量, 这样查询时只需检查 check, 不必检查下标是否越界
+        final var length = used + columnCount;
+        this.check = Arrays.copyOf(owner, length);
+        Arrays.fill(check, Math.min(owner.length, length), length, -1);
+        this.next = new int[length];
+        for (int state = 0; state < stateCount; state++) {
+            for (int i = 0; i < rowColumns[state].length; i++) {
+                next[base[state] + rowColumns[state][i]] = rowValues[state][i];
+            }
+        }
+    }
+
+    private static boolean fits(int[] owner, int[] columns, int offset) {
+        for (final var column : columns) {
+            final var index = offset + column;
+            if (index < owner.length && owner[index] >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getInit() {
+        return initState;
+    }
+
+    @Override
+    public int getAction(int state, int code) {
+        final var index = code + 1;
+        if (index < 0 || index >= terminalColumnOfCode.length) {
+            return CompiledLRTable.pack(CompiledLRTable.ERROR, 0);
+        }
+
+        final var column = terminalColumnOfCode[index];
+        if (column < 0) {
+            return CompiledLRTable.pack(CompiledLRTable.ERROR, 0);
+        }
+
+        final var slot = base[state] + column;
+        return check[slot] == state ? next[slot] : defaultActions[state];
+    }
+
+    @Override
+    public int getGoto(int state, int production) {
+        final var column = headColumn[production];
+        if (column < 0) {
+            return -1;
+        }
+
+        final var slot = base[state] + terminalCount + column;
+        return check[slot] == state ? next[slot] : defaultGotos[column];
+    }
+
+    @Override
+    public int getBodyLength(int production) {
+        return bodyLength[production];
+    }
+
+    @Override
+    public Status getStatus(int index) {
+        return statuses[index];
+    }
+
+    @Override
+    public Production getProduction(int index) {
+        return productions[index];
+    }
+
+    @Override
+    public int getStatusCount() {
+        return statuses.length;
+    }
+
+    @Override
+    public int getProductionCount() {
+        return productions.length - 1;
+    }
+
+    /**
+     * @return 共享的 next/check 数组的长度
+     */
+    public int getSlotCount() {
+        return next.length;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedLRTable(states=%d, slots=%d)".formatted(statuses.length, next.length);
+    }
+}
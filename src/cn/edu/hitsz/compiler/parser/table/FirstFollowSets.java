@@ -0,0 +1,267 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文法的 NULLABLE, FIRST 与 FOLLOW 集合
+ * <br>
+ * 终结符与非终结符分别被稠密地编号, 每个集合都是以终结符编号为位下标的 {@code long[]} 位集.
+ * 三种集合均以工作表迭代到不动点: 某个非终结符的集合发生变化时, 只重新计算依赖于它的产生式或非终结符,
+ * 因此不需要每次都扫描整个产生式列表. 与递归求解不同, 这里也正确处理了可空的符号.
+ */
+final class FirstFollowSets {
+    private final List<TokenKind> terminals;
+    private final Map<TokenKind, Integer> terminalIndex = new HashMap<>();
+    private final List<NonTerminal> nonTerminals;
+    private final Map<NonTerminal, Integer> nonTerminalIndex = new HashMap<>();
+    private final int words;
+
+    private final boolean[] nullable;
+    private final long[][] first;
+    private final long[][] follow;
+    // 终结符自身的 first 集合, 预先构造以免查询时分配
+    private final long[][] terminalFirst;
+
+    /**
+     * @param productions  按编号顺序排列的产生式, 第一条产生式的头为开始符号
+     * @param terminals    所有终结符
+     * @param nonTerminals 所有非终结符
+     */
+    FirstFollowSets(List<Production> productions, Collection<TokenKind> terminals, Collection<NonTerminal> nonTerminals) {
+        this.terminals = new ArrayList<>(terminals);
+        for (int i = 0; i < this.terminals.size(); i++) {
+            terminalIndex.put(this.terminals.get(i), i);
+        }
+        this.nonTerminals = new ArrayList<>(nonTerminals);
+        for (int i = 0; i < this.nonTerminals.size(); i++) {
+            nonTerminalIndex.put(this.nonTerminals.get(i), i);
+        }
+        this.words = (this.terminals.size() + Long.SIZE - 1) / Long.SIZE;
+
+        this.terminalFirst = new long[this.terminals.size()][words];
+        for (int i = 0; i < terminalFirst.length; i++) {
+            set(terminalFirst[i], i);
+        }
+
+        final var count = this.nonTerminals.size();
+        this.nullable = new boolean[count];
+        this.first = new long[count][words];
+        this.follow = new long[count][words];
+
+        calcFirst(productions);
+        calcFollow(productions);
+    }
+
+    /**
+     * @return 该符号能否推导出空串
+     */
+    boolean isNullable(Term term) {
+        return term instanceof NonTerminal nonTerminal && nullable[indexOf(nonTerminal)];
+    }
+
+    /**
+     * @return 该符号的 first 集合, 调用者不应修改
+     */
+    long[] firstOf(Term term) {
+        if (term instanceof TokenKind tokenKind) {
+            return terminalFirst[indexOf(tokenKind)];
+        } else {
+            return first[indexOf((NonTerminal) term)];
+        }
+    }
+
+    /**
+     * @return 该非终结符的 follow 集合, 调用者不应修改
+     */
+    long[] followOf(NonTerminal nonTerminal) {
+        return follow[indexOf(nonTerminal)];
+    }
+
+    /**
+     * 把符号串 {@code symbols[from:]} 的 first 集合并入 {@code into}
+     *
+     * @return 该符号串能否推导出空串
+     */
+    boolean addFirstOfSequence(List<Term> symbols, int from, long[] into) {
+        for (int i = from; i < symbols.size(); i++) {
+            final var symbol = symbols.get(i);
+            or(into, firstOf(symbol));
+            if (!isNullable(symbol)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 一个空的位集
+     */
+    long[] emptySet() {
+        return new long[words];
+    }
+
+    /**
+     * @return 位集中的全部终结符
+     */
+    List<TokenKind> toTerminals(long[] set) {
+        final var result = new ArrayList<TokenKind>();
+        for (int word = 0; word < set.length; word++) {
+            var bits = set[word];
+            while (bits != 0) {
+                result.add(terminals.get(word * Long.SIZE + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算 nullable 与 first
+     * <br>
+     * 每条产生式 A -> X1 X2 ... Xn 都给出约束: first(A) 包含 first(X1), 若 X1 可空则还包含 first(X2), 以此类推;
+     * 若 X1 ... Xn 都可空则 A 可空. 某个非终结符的集合变化后, 只需重新检查体中含有它的产生式.
+     */
+    private void calcFirst(List<Production> productions) {
+        // 以非终结符为下标, 得到体中含有它的产生式
+        final var usedIn = new ArrayList<List<Production>>();
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            usedIn.add(new ArrayList<>());
+        }
+        for (final var production : productions) {
+            for (final var symbol : production.body()) {
+                if (symbol instanceof NonTerminal nonTerminal) {
+                    final var users = usedIn.get(indexOf(nonTerminal));
+                    if (users.isEmpty() || users.get(users.size() - 1) != production) {
+                        users.add(production);
+                    }
+                }
+            }
+        }
+
+        final var worklist = new ArrayDeque<>(productions);
+        final var inQueue = new boolean[productions.size() + 1];
+        for (final var production : productions) {
+            inQueue[production.index()] = true;
+        }
+
+        final var scratch = new long[words];
+        while (!worklist.isEmpty()) {
+            final var production = worklist.pollFirst();
+            inQueue[production.index()] = false;
+
+            final var head = indexOf(production.head());
+            Arrays.fill(scratch, 0);
+            final var bodyNullable = addFirstOfSequence(production.body(), 0, scratch);
+
+            var changed = or(first[head], scratch);
+            if (bodyNullable && !nullable[head]) {
+                nullable[head] = true;
+                changed = true;
+            }
+
+            if (changed) {
+                for (final var user : usedIn.get(head)) {
+                    if (!inQueue[user.index()]) {
+                        inQueue[user.index()] = true;
+                        worklist.addLast(user);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算 follow
+     * <br>
+     * 对每条产生式 A -> alpha B beta, follow(B) 包含 first(beta); 若 beta 可空, 则 follow(B) 还包含 follow(A).
+     * 前者只需计算一次, 后者构成非终结符之间的包含关系图, 沿图传播到不动点即可.
+     */
+    private void calcFollow(List<Production> productions) {
+        // 开始符号的 follow 是 EOF
+        final var start = indexOf(productions.get(0).head());
+        set(follow[start], indexOf(TokenKind.eof()));
+
+        // 以非终结符 A 为下标, 得到 follow 集合包含 follow(A) 的非终结符
+        final var includedBy = new ArrayList<List<Integer>>();
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            includedBy.add(new ArrayList<>());
+        }
+
+        for (final var production : productions) {
+            final var head = indexOf(production.head());
+            final var body = production.body();
+            for (int i = 0; i < body.size(); i++) {
+                if (body.get(i) instanceof NonTerminal nonTerminal) {
+                    final var target = indexOf(nonTerminal);
+                    final var restNullable = addFirstOfSequence(body, i + 1, follow[target]);
+                    if (restNullable && target != head) {
+                        includedBy.get(head).add(target);
+                    }
+                }
+            }
+        }
+
+        final var worklist = new ArrayDeque<Integer>();
+        final var inQueue = new boolean[nonTerminals.size()];
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            worklist.addLast(i);
+            inQueue[i] = true;
+        }
+
+        while (!worklist.isEmpty()) {
+            final int source = worklist.pollFirst();
+            inQueue[source] = false;
+            for (final int target : includedBy.get(source)) {
+                if (or(follow[target], follow[source]) && !inQueue[target]) {
+                    inQueue[target] = true;
+                    worklist.addLast(target);
+                }
+            }
+        }
+    }
+
+    private int indexOf(TokenKind terminal) {
+        final var index = terminalIndex.get(terminal);
+        if (index == null) {
+            throw new RuntimeException("Unknown terminal: " + terminal);
+        }
+        return index;
+    }
+
+    private int indexOf(NonTerminal nonTerminal) {
+        final var index = nonTerminalIndex.get(nonTerminal);
+        if (index == null) {
+            throw new RuntimeException("Unknown non-terminal: " + nonTerminal);
+        }
+        return index;
+    }
+
+    private static void set(long[] set, int index) {
+        set[index / Long.SIZE] |= 1L << (index % Long.SIZE);
+    }
+
+    /**
+     * {@code into |= from}
+     *
+     * @return into 是否发生了变化
+     */
+    static boolean or(long[] into, long[] from) {
+        var changed = false;
+        for (int i = 0; i < into.length; i++) {
+            final var merged = into[i] | from[i];
+            if (merged != into[i]) {
+                into[i] = merged;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
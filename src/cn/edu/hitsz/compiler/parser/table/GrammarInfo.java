@@ -51,10 +51,10 @@ public class GrammarInfo {
     }
 
     // 为了防止有人看不懂, 就不用枚举定义单例了
-    // 顺手写个懒加载
+    // 顺手写个懒加载, 加锁以免并发的多次编译各自读取一遍文法
     private static GrammarInfo instance = null;
 
-    private static GrammarInfo getInstance() {
+    private static synchronized GrammarInfo getInstance() {
         if (instance == null) {
             instance = new GrammarInfo();
         }
@@ -68,6 +68,20 @@ public class LRTable {
         FileUtils.writeFile(path, text.toString());
     }
 
+    //==================== 以下为供同一包内的表变换使用的访问器 ==============================//
+
+    List<Status> getStatusInIndexOrder() {
+        return statusInIndexOrder;
+    }
+
+    List<TokenKind> getTerminals() {
+        return terminals;
+    }
+
+    List<NonTerminal> getNonTerminals() {
+        return nonTerminals;
+    }
+
     private String convertToGotoString(Status status) {
         if (status.equals(Status.error())) {
             return "";
@@ -0,0 +1,54 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+/**
+ * LR 驱动程序查询分析表时使用的接口
+ * <br>
+ * 状态, 终结符与产生式都以下标表示, 动作按 {@link CompiledLRTable} 的方式打包,
+ * 用 {@link CompiledLRTable#kindOf} 与 {@link CompiledLRTable#payloadOf} 拆解.
+ */
+public interface ParseTable {
+    /**
+     * @return 起始状态
+     */
+    int getInit();
+
+    /**
+     * @param state 当前状态
+     * @param code  当前词法单元类型的码点
+     * @return 打包后的动作
+     */
+    int getAction(int state, int code);
+
+    /**
+     * @param state      规约后露出的栈顶状态
+     * @param production 规约的产生式编号
+     * @return 规约出产生式头后应转移到的状态, 没有转移时为 -1
+     */
+    int getGoto(int state, int production);
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式体的长度, 即规约时要弹出的状态数
+     */
+    int getBodyLength(int production);
+
+    /**
+     * @return 编号对应的状态对象, 用于通知观察者
+     */
+    Status getStatus(int index);
+
+    /**
+     * @return 编号对应的产生式对象, 用于通知观察者
+     */
+    Production getProduction(int index);
+
+    /**
+     * @return 状态的数量
+     */
+    int getStatusCount();
+
+    /**
+     * @return 产生式的数量, 产生式编号为 1 到该值
+     */
+    int getProductionCount();
+}
@@ -0,0 +1,226 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LR 分析表的二进制缓存
+ * <br>
+ * 读取 CSV 格式的分析表需要逐行切割字符串, 并按文本查找产生式. 对于只运行一次就退出的编译过程, 这部分时间不可忽略.
+ * 因此第一次读取 CSV 之后, 我们把分析表以紧凑的二进制格式写入缓存文件, 之后的运行直接将缓存文件映射到内存中读取.
+ * <br>
+ * 缓存文件的格式如下 (均为大端序):
+ * <pre>
+ * int     魔数 "STLR"
+ * int     格式版本
+ * byte[32] grammar.txt, coding_map.csv 与 CSV 分析表内容的 SHA-256
+ * int     状态数 n, 随后 n 个 int 为按顺序排列的状态编号
+ * int     终结符数 t, 随后 t 个 int 为各终结符的码点
+ * int     非终结符数 m, 随后 m 个 (short 长度, UTF-8 字节) 为各非终结符的名字
+ * n * t 个 int  按状态顺序排列的 action, 编码同 {@link CompiledLRTable#getAction}
+ * n * m 个 int  按状态顺序排列的 goto, 没有转移时为 -1
+ * </pre>
+ * 只要魔数, 版本或摘要中任何一个与当前输入不符, 缓存就被视为过期, 此时重新读取 CSV 并覆盖缓存.
+ */
+public final class TableCache {
+    private static final int MAGIC = 0x53544C52;
+    private static final int VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+
+    /**
+     * 读取分析表, 缓存有效时直接读取缓存, 否则读取 CSV 并写入缓存
+     *
+     * @param csvPath   CSV 格式的分析表路径
+     * @param cachePath 缓存文件路径
+     * @return LRTable
+     */
+    public static LRTable load(String csvPath, String cachePath) {
+        final var digest = digest(FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH, csvPath);
+
+        final var cached = tryRead(Paths.get(cachePath), digest);
+        if (cached != null) {
+            return cached;
+        }
+
+        final var table = new TableLoader().load(csvPath);
+        try {
+            write(Paths.get(cachePath), digest, table);
+        } catch (IOException e) {
+            // 缓存只是加速手段, 写不进去也不影响本次编译
+            System.err.println("Can not write LR table cache to " + cachePath + ": " + e.getMessage());
+        }
+        return table;
+    }
+
+    private static byte[] digest(String... paths) {
+        try {
+            final var sha = MessageDigest.getInstance("SHA-256");
+            for (final var path : paths) {
+                final var content = Files.readAllBytes(Paths.get(path));
+                // 先写入长度, 避免不同文件的内容拼接后产生歧义
+                sha.update(ByteBuffer.allocate(Integer.BYTES).putInt(content.length).array());
+                sha.update(content);
+            }
+            return sha.digest();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception when hashing table inputs", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * @return 缓存有效时读取出的分析表, 缓存不存在或已过期时为 null
+     */
+    private static LRTable tryRead(Path path, byte[] digest) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        final ByteBuffer buffer;
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            final var stored = new byte[DIGEST_LENGTH];
+            buffer.get(stored);
+            if (!Arrays.equals(stored, digest)) {
+                return null;
+            }
+            return read(buffer);
+        } catch (RuntimeException e) {
+            // 文件被截断或损坏, 同样视为过期
+            return null;
+        }
+    }
+
+    private static LRTable read(ByteBuffer buffer) {
+        final var statusCount = buffer.getInt();
+        final var statusInIndexOrder = new ArrayList<Status>(statusCount);
+        final var statuses = new Status[statusCount];
+        for (int i = 0; i < statusCount; i++) {
+            final var status = Status.create(buffer.getInt());
+            statusInIndexOrder.add(status);
+            statuses[status.index()] = status;
+        }
+
+        final var terminals = new ArrayList<TokenKind>();
+        final var terminalCount = buffer.getInt();
+        for (int i = 0; i < terminalCount; i++) {
+            terminals.add(TokenKind.fromCode(buffer.getInt()));
+        }
+
+        final var nonTerminals = new ArrayList<NonTerminal>();
+        final var nonTerminalCount = buffer.getInt();
+        for (int i = 0; i < nonTerminalCount; i++) {
+            final var name = new byte[buffer.getShort()];
+            buffer.get(name);
+            nonTerminals.add(new NonTerminal(new String(name, StandardCharsets.UTF_8)));
+        }
+
+        final var productions = GrammarInfo.getProductionsInOrder();
+        for (final var status : statusInIndexOrder) {
+            for (final var terminal : terminals) {
+                final var action = buffer.getInt();
+                final var payload = CompiledLRTable.payloadOf(action);
+                switch (CompiledLRTable.kindOf(action)) {
+                    case CompiledLRTable.SHIFT -> status.setAction(terminal, Action.shift(statuses[payload]));
+                    case CompiledLRTable.REDUCE -> status.setAction(terminal, Action.reduce(productions.get(payload - 1)));
+                    case CompiledLRTable.ACCEPT -> status.setAction(terminal, Action.accept());
+                    default -> {
+                        // 空单元格即错误动作, Status 在查不到时本就返回错误动作
+                    }
+                }
+            }
+            for (final var nonTerminal : nonTerminals) {
+                final var target = buffer.getInt();
+                if (target >= 0) {
+                    status.setGoto(nonTerminal, statuses[target]);
+                }
+            }
+        }
+
+        return new LRTable(statusInIndexOrder, terminals, nonTerminals);
+    }
+
+    private static void write(Path path, byte[] digest, LRTable table) throws IOException {
+        final var statuses = table.getStatusInIndexOrder();
+        final List<TokenKind> terminals = table.getTerminals();
+        final List<NonTerminal> nonTerminals = table.getNonTerminals();
+
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(digest);
+
+            out.writeInt(statuses.size());
+            for (final var status : statuses) {
+                out.writeInt(status.index());
+            }
+            out.writeInt(terminals.size());
+            for (final var terminal : terminals) {
+                out.writeInt(terminal.getCode());
+            }
+            out.writeInt(nonTerminals.size());
+            for (final var nonTerminal : nonTerminals) {
+                final var name = nonTerminal.getTermName().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+
+            for (final var status : statuses) {
+                for (final var terminal : terminals) {
+                    final var action = status.getAction(terminal);
+                    out.writeInt(switch (action.getKind()) {
+                        case Shift -> CompiledLRTable.pack(CompiledLRTable.SHIFT, action.getStatus().index());
+                        case Reduce -> CompiledLRTable.pack(CompiledLRTable.REDUCE, action.getProduction().index());
+                        case Accept -> CompiledLRTable.pack(CompiledLRTable.ACCEPT, 0);
+                        case Error -> CompiledLRTable.pack(CompiledLRTable.ERROR, 0);
+                    });
+                }
+                for (final var nonTerminal : nonTerminals) {
+                    final var target = status.getGoto(nonTerminal);
+                    out.writeInt(target.isError() ? -1 : target.index());
+                }
+            }
+        }
+
+        // 先写入临时文件再替换, 避免其它进程读到写了一半的缓存
+        final var parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final var temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private TableCache() {
+    }
+}
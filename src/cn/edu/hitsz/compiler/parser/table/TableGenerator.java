@@ -2,18 +2,59 @@ package cn.edu.hitsz.compiler.parser.table;
 
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IntStack;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 除 SLR(1) 外, 该生成器也能构造 LALR(1) 分析表: 两者的状态都是 LR(0) 项目集, 区别只在于规约动作的向前看符号.
+ * LALR(1) 的向前看符号不通过对 LR(1) 项目集求闭包得到, 而是在 LR(0) 项目集的核上确定 "自发生成" 与 "传播" 的关系之后迭代传播得到,
+ * 因此状态数与 SLR(1) 相同, 远少于规范 LR(1).
+ * <br>
+ * 为了处理较大的文法, 项目与文法符号都被稠密地编号: 项目 A -> alpha . beta 的编号为 {@code itemBase[产生式编号] + 点的位置},
+ * 状态则由其核 (已排序的项目编号数组) 唯一确定, 并通过以核为键的散列表去重. 构造规范项目集族时求得的 GO 函数被保存下来,
+ * 填表与计算向前看符号时直接查表, 不再重新求闭包.
  */
 public class TableGenerator {
+    /**
+     * 分析表的种类
+     */
+    public enum Mode {
+        /**
+         * 以 follow 集合作为规约的向前看符号
+         */
+        SLR,
+        /**
+         * 以传播得到的 LALR(1) 向前看符号作为规约的向前看符号
+         */
+        LALR
+    }
+
     public TableGenerator() {
+        this(Mode.SLR);
+    }
+
+    /**
+     * @param mode 要构造的分析表的种类
+     */
+    public TableGenerator(Mode mode) {
+        this(mode, false);
+    }
+
+    /**
+     * @param mode     要构造的分析表的种类
+     * @param parallel 是否在 ForkJoinPool 上逐层并行地构造规范项目集族, 生成的分析表与顺序构造时完全相同
+     */
+    public TableGenerator(Mode mode, boolean parallel) {
+        this.parallel = parallel;
+        this.mode = mode;
         this.productions = GrammarInfo.getProductionsInOrder();
         this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
         this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
@@ -21,28 +62,49 @@ public class TableGenerator {
         if (productions.get(0).body().size() != 1) {
             throw new RuntimeException("The first production in grammar file must like S -> S'");
         }
+
+        // 非终结符在前, 终结符在后, 这也是构造规范项目集族时尝试各文法符号的顺序
+        this.symbols = new ArrayList<>(nonTerminals);
+        this.symbols.addAll(terminals);
+        for (int i = 0; i < symbols.size(); i++) {
+            symbolIndex.put(symbols.get(i), i);
+        }
     }
 
     /**
      * 主体方法
      */
     public void run() {
-        calcFirst();
-        calcFollow();
+        sets = new FirstFollowSets(productions, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
+        numberItems();
         constructDFA();
+        if (mode == Mode.LALR) {
+            calcLookaheads();
+        }
         dumpItems();
         genTable();
     }
 
     /**
      * 将该分析表生成的 LR(0) 规范集族打印到某个文件之中, 用于调试
+     * <br>
+     * 构造 LALR(1) 分析表时, 核心项目后面还会打印其向前看符号
      */
     public void dumpItems() {
         final var lines = new ArrayList<String>();
         for (final var status : allStatusInIndexOrder) {
-            lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+            final var state = status.index();
+            lines.add("%d: ".formatted(state));
+
+            final var kernel = kernels.get(state).items();
+            for (final var item : closures.get(state)) {
+                final var position = Arrays.binarySearch(kernel, item);
+                if (mode == Mode.LALR && position >= 0) {
+                    final var lookaheads = sets.toTerminals(kernelLookaheads[kernelOffset[state] + position]);
+                    lines.add("    %s, %s".formatted(itemToString(item), lookaheads));
+                } else {
+                    lines.add("    " + itemToString(item));
+                }
             }
         }
 
@@ -56,337 +118,604 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    private final Mode mode;
+    private final boolean parallel;
     private final List<Production> productions;
     private final Set<TokenKind> terminals;
     private final Set<NonTerminal> nonTerminals;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
+    private final List<Term> symbols;
+    private final Map<Term, Integer> symbolIndex = new HashMap<>();
+
+    private FirstFollowSets sets;
 
-    private final Set<Term> visited = new HashSet<>();
+    //============================== 项目 ==============================
+
+    // 以产生式编号为下标, 得到该产生式点在开头的项目的编号
+    private int[] itemBase;
+    // 以项目编号为下标, 得到项目的产生式, 点的位置与点后面的文法符号编号 (点在末尾时为 -1)
+    private Production[] itemProduction;
+    private int[] itemDot;
+    private int[] itemAfterDot;
+    // 以非终结符编号为下标, 得到以其为头的产生式点在开头的项目
+    private int[][] startItemsOf;
+    // 以非终结符编号为下标, 得到展开该非终结符时加入闭包的全部项目 (即 startItemsOf 的传递闭包), 已排序
+    private int[][] expansionOf;
 
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 为所有项目编号, 并预先求出展开每个非终结符时要加入闭包的项目
      */
-    private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
+    private void numberItems() {
+        itemBase = new int[productions.size() + 1];
+        int itemCount = 0;
+        for (final var production : productions) {
+            itemBase[production.index()] = itemCount;
+            itemCount += production.body().size() + 1;
         }
 
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
+        itemProduction = new Production[itemCount];
+        itemDot = new int[itemCount];
+        itemAfterDot = new int[itemCount];
+        final var startItems = new ArrayList<List<Integer>>();
+        for (int i = 0; i < symbols.size(); i++) {
+            startItems.add(new ArrayList<>());
         }
 
-    }
+        for (final var production : productions) {
+            final var body = production.body();
+            final var base = itemBase[production.index()];
+            for (int dot = 0; dot <= body.size(); dot++) {
+                itemProduction[base + dot] = production;
+                itemDot[base + dot] = dot;
+                itemAfterDot[base + dot] = dot < body.size() ? symbolIndex.get(body.get(dot)) : -1;
+            }
+            startItems.get(symbolIndex.get(production.head())).add(base);
+        }
 
-    /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
-     */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
+        startItemsOf = new int[symbols.size()][];
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+            startItemsOf[symbol] = startItems.get(symbol).stream().mapToInt(Integer::intValue).toArray();
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
+        // 对每个非终结符, 沿 "点后面是非终结符" 的关系搜索所有可能展开出的非终结符
+        expansionOf = new int[symbols.size()][];
+        final var reached = new boolean[symbols.size()];
+        for (int symbol = 0; symbol < nonTerminals.size(); symbol++) {
+            Arrays.fill(reached, false);
+            final var unexpanded = new IntStack();
+            final var result = new ArrayList<Integer>();
+            reached[symbol] = true;
+            unexpanded.push(symbol);
+
+            while (!unexpanded.isEmpty()) {
+                for (final var item : startItemsOf[unexpanded.pop()]) {
+                    result.add(item);
+                    final var afterDot = itemAfterDot[item];
+                    if (isNonTerminal(afterDot) && !reached[afterDot]) {
+                        reached[afterDot] = true;
+                        unexpanded.push(afterDot);
+                    }
                 }
             }
-        }
 
-        first.put(nonTerminal, result);
-        return result;
+            expansionOf[symbol] = result.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
     }
 
+    /**
+     * @return 编号为 symbol 的文法符号是否为非终结符, 编号为 -1 时也返回 false
+     */
+    private boolean isNonTerminal(int symbol) {
+        return symbol >= 0 && symbol < nonTerminals.size();
+    }
 
     /**
-     * 计算所有非终结符的 follow 集合
+     * 按 {@code A -> B . C} 的格式打印项目
      */
-    private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+    private String itemToString(int item) {
+        final var production = itemProduction[item];
+        final var dot = itemDot[item];
+        final var builder = new StringBuilder();
+
+        builder.append(production.head());
+        builder.append(" -> ");
+
+        final var body = production.body();
+        for (int i = 0; i < body.size(); i++) {
+            if (i == dot) {
+                builder.append(" .");
+            }
+            builder.append(" ").append(body.get(i));
+        }
+
+        if (dot == body.size()) {
+            builder.append(" .");
         }
 
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
+        return builder.toString();
     }
 
+    //============================== 规范项目集族 ==============================
+
     /**
-     * 递归计算给定非终结符的 follow 集合
+     * 项目集的核, 即已排序的核心项目编号. 两个状态相同当且仅当它们的核相同.
      *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * @param items 已排序的核心项目编号
+     * @param hash  预先计算好的散列值
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
+    private record Kernel(int[] items, int hash) {
+        static Kernel of(int[] items) {
+            return new Kernel(items, Arrays.hashCode(items));
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Kernel kernel
+                && kernel.hash == hash
+                && Arrays.equals(kernel.items, items);
+        }
 
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
+    /**
+     * 求闭包与后继项目集时使用的临时空间, 避免为每个状态重新分配
+     */
+    private final class Workspace {
+        private final int[] mark = new int[itemProduction.length];
+        private int stamp = 0;
+        private int[] buffer = new int[16];
+        private int size = 0;
+
+        private final int[][] buckets = new int[symbols.size()][4];
+        private final int[] bucketSizes = new int[symbols.size()];
+
+        private void add(int item) {
+            if (mark[item] != stamp) {
+                mark[item] = stamp;
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
                 }
+                buffer[size++] = item;
             }
+        }
+    }
 
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
+    private final List<Kernel> kernels = new ArrayList<>();
+    // 并行构造时各线程会同时查询该表
+    private final Map<Kernel, Integer> interned = new ConcurrentHashMap<>();
+    // 以状态编号为下标, 得到该状态的闭包 (已排序的项目编号)
+    private final List<int[]> closures = new ArrayList<>();
+    // 以状态编号为下标, 得到以文法符号编号为下标的 GO 函数, 没有后继时为 -1
+    private final List<int[]> gotos = new ArrayList<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+
+    /**
+     * 构造 LR(0) 规范项目集族, 并维护状态与项目集, 状态之间的转移的对应关系
+     * <br>
+     * 以 BFS 的形式搜索: 状态列表本身就是 BFS 的队列, 新的核在被发现时依次编号.
+     */
+    private void constructDFA() {
+        final var initItem = itemBase[productions.get(0).index()];
+        intern(Kernel.of(new int[]{initItem}));
+
+        if (parallel) {
+            constructDFAInParallel();
+        } else {
+            final var workspace = new Workspace();
+            for (int state = 0; state < kernels.size(); state++) {
+                final var closure = constructClosure(kernels.get(state).items(), workspace);
+                closures.add(closure);
+
+                final var successors = constructSuccessors(closure, workspace);
+                final var row = new int[symbols.size()];
+                for (int symbol = 0; symbol < symbols.size(); symbol++) {
+                    // 按文法符号的顺序尝试求后继项目集, 如果还未出现过就加入状态列表中
+                    row[symbol] = successors[symbol] == null ? -1 : intern(Kernel.of(successors[symbol]));
                 }
+                gotos.add(row);
             }
         }
 
-        follow.put(nonTerminal, result);
-        return result;
+        for (int state = 0; state < kernels.size(); state++) {
+            allStatusInIndexOrder.add(Status.create(state));
+        }
     }
 
+    // 并行构造时, 各线程求到的后继状态尚未编号时在 GO 函数中暂记为该值
+    private static final int PENDING = -2;
+    // 并行构造时, 每个子任务至少处理的状态数
+    private static final int STATES_PER_TASK = 8;
+
     /**
-     * 表示一个项目
+     * 逐层并行地构造规范项目集族
      * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
-     *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * BFS 中同一层的各个状态的闭包与后继互不依赖, 因此每层都在 ForkJoinPool 上并行计算, 已经编号的后继直接从核的散列表中查到.
+     * 随后按状态顺序与文法符号顺序依次为新出现的核编号, 这与顺序 BFS 的编号顺序完全相同, 因此生成的分析表是确定的.
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
-        }
-
-        /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
-         */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
+    private void constructDFAInParallel() {
+        final var workspaces = ThreadLocal.withInitial(Workspace::new);
+        int begin = 0;
+        while (begin < kernels.size()) {
+            final var size = kernels.size() - begin;
+            final var level = new Level(begin, new int[size][], new Kernel[size][], new int[size][]);
+            ForkJoinPool.commonPool().invoke(new ExpandTask(level, 0, size, workspaces));
+
+            for (int i = 0; i < size; i++) {
+                closures.add(level.closures()[i]);
+                final var row = level.rows()[i];
+                for (int symbol = 0; symbol < symbols.size(); symbol++) {
+                    if (row[symbol] == PENDING) {
+                        row[symbol] = intern(level.successors()[i][symbol]);
+                    }
+                }
+                gotos.add(row);
             }
+            begin += size;
         }
+    }
 
-        /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
-         */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
-            }
+    /**
+     * BFS 中的一层状态, 以及并行求得的各状态的闭包, 后继项目集的核与 GO 函数
+     *
+     * @param begin 该层第一个状态的编号
+     */
+    private record Level(int begin, int[][] closures, Kernel[][] successors, int[][] rows) {
+    }
+
+    /**
+     * 求一层中编号在 [begin + from, begin + to) 内的状态的闭包与后继, 范围较大时二分为子任务
+     */
+    private final class ExpandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Level level;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<Workspace> workspaces;
+
+        private ExpandTask(Level level, int from, int to, ThreadLocal<Workspace> workspaces) {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.workspaces = workspaces;
         }
 
         @Override
-        public String toString() {
-            final var builder = new StringBuilder();
-
-            builder.append(production.head());
-            builder.append(" -> ");
+        protected void compute() {
+            if (to - from > STATES_PER_TASK) {
+                final var middle = (from + to) >>> 1;
+                invokeAll(new ExpandTask(level, from, middle, workspaces), new ExpandTask(level, middle, to, workspaces));
+                return;
+            }
 
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
+            final var workspace = workspaces.get();
+            for (int i = from; i < to; i++) {
+                final var closure = constructClosure(kernels.get(level.begin() + i).items(), workspace);
+                final var successors = constructSuccessors(closure, workspace);
+                final var kernelsOfSymbol = new Kernel[symbols.size()];
+                final var row = new int[symbols.size()];
+                for (int symbol = 0; symbol < symbols.size(); symbol++) {
+                    if (successors[symbol] == null) {
+                        row[symbol] = -1;
+                    } else {
+                        // 之前各层中已经出现过的核可以直接查到编号, 本层新出现的核稍后按顺序编号
+                        kernelsOfSymbol[symbol] = Kernel.of(successors[symbol]);
+                        row[symbol] = interned.getOrDefault(kernelsOfSymbol[symbol], PENDING);
+                    }
                 }
-                builder.append(" ").append(body.get(i));
-            }
 
-            if (dot == body.size()) {
-                builder.append(" .");
+                level.closures()[i] = closure;
+                level.successors()[i] = kernelsOfSymbol;
+                level.rows()[i] = row;
             }
-
-            return builder.toString();
         }
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    /**
+     * @return 核对应的状态编号, 核第一次出现时为其分配新的编号
+     */
+    private int intern(Kernel kernel) {
+        return interned.computeIfAbsent(kernel, k -> {
+            kernels.add(k);
+            return kernels.size() - 1;
+        });
+    }
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 构造核 {@code kernel} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     * <br>
+     * 由于已经预先求出了展开每个非终结符时要加入的全部项目, 这里只需对每个核心项目查一次表.
+     *
+     * @param kernel 已排序的核心项目
+     * @return 已排序的闭包
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private int[] constructClosure(int[] kernel, Workspace workspace) {
+        workspace.stamp++;
+        workspace.size = 0;
+        for (final var item : kernel) {
+            workspace.add(item);
+        }
+        for (final var item : kernel) {
+            final var afterDot = itemAfterDot[item];
+            if (isNonTerminal(afterDot)) {
+                for (final var expanded : expansionOf[afterDot]) {
+                    workspace.add(expanded);
+                }
+            }
+        }
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+        final var closure = Arrays.copyOf(workspace.buffer, workspace.size);
+        Arrays.sort(closure);
+        return closure;
+    }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+    /**
+     * 相当于对每个文法符号 X 求 GO(I, X) 的核
+     *
+     * @param closure 已排序的项目集 I
+     * @return 以文法符号编号为下标的后继项目集的核, 没有后继时为 null
+     */
+    private int[][] constructSuccessors(int[] closure, Workspace workspace) {
+        // closure 已排序, 因此按顺序把每个项目的后继项分到点后面的符号对应的组中, 每组也都是有序的
+        for (final var item : closure) {
+            final var afterDot = itemAfterDot[item];
+            if (afterDot >= 0) {
+                final var size = workspace.bucketSizes[afterDot];
+                if (size == workspace.buckets[afterDot].length) {
+                    workspace.buckets[afterDot] = Arrays.copyOf(workspace.buckets[afterDot], size * 2);
+                }
+                workspace.buckets[afterDot][size] = item + 1;
+                workspace.bucketSizes[afterDot] = size + 1;
+            }
         }
+
+        final var result = new int[symbols.size()][];
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+            if (workspace.bucketSizes[symbol] > 0) {
+                result[symbol] = Arrays.copyOf(workspace.buckets[symbol], workspace.bucketSizes[symbol]);
+                workspace.bucketSizes[symbol] = 0;
+            }
+        }
+        return result;
     }
 
+    //============================== LALR(1) 向前看符号 ==============================
+
+    // 核心项目被编号为 kernelOffset[状态] + 其在核中的位置, 以该编号为下标得到其向前看符号
+    private int[] kernelOffset;
+    private long[][] kernelLookaheads;
+
+    // 以项目编号为下标, 得到点后面的符号之后的符号串的 first 集合与其是否可空, 只对点后面是非终结符的项目有效
+    private long[][] firstAfterNext;
+    private boolean[] nullableAfterNext;
+
     /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * 对带向前看符号的项目集求闭包时使用的临时空间
+     * <br>
+     * 闭包中的项目 i 的向前看符号为 lookaheads[i], propagates[i] 表示其向前看符号中是否含有用来探测传播关系的占位符 #
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private final class LookaheadWorkspace {
+        private final int[] mark = new int[itemProduction.length];
+        private int stamp = 0;
+        private final long[][] lookaheads = new long[itemProduction.length][];
+        private final boolean[] propagates = new boolean[itemProduction.length];
+        private final boolean[] queued = new boolean[itemProduction.length];
+        private final IntStack touched = new IntStack();
+
+        /**
+         * @return 项目是否第一次加入本次闭包
+         */
+        private boolean touch(int item) {
+            if (mark[item] == stamp) {
+                return false;
+            }
+            mark[item] = stamp;
+            if (lookaheads[item] == null) {
+                lookaheads[item] = sets.emptySet();
+            } else {
+                Arrays.fill(lookaheads[item], 0);
+            }
+            propagates[item] = false;
+            touched.push(item);
+            return true;
+        }
     }
 
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     * 构造 LR(1) 项目集的闭包
+     * <br>
+     * 对闭包中的每个 [A -> alpha . B beta, a], 把 [B -> . gamma, b] 加入闭包, 其中 b 取遍 first(beta a).
+     * 项目以其 LR(0) 核心合并, 每个项目只保存一个向前看符号集合, 集合变化时才重新展开该项目.
      *
-     * @param sourceItem 项集 I
-     * @return 闭包
+     * @param kernel           核心项目
+     * @param kernelLookaheads 各核心项目的向前看符号, 为 null 时均为空集
+     * @param propagates       核心项目的向前看符号中是否含有占位符 #
+     * @return 闭包中的所有项目, 其向前看符号保存在 workspace 中
      */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
+    private int[] constructLookaheadClosure(int[] kernel, long[][] kernelLookaheads, boolean propagates,
+                                            LookaheadWorkspace workspace) {
+        workspace.stamp++;
+        workspace.touched.clear();
+        final var unexpanded = new IntStack();
+        for (int i = 0; i < kernel.length; i++) {
+            final var item = kernel[i];
+            workspace.touch(item);
+            if (kernelLookaheads != null) {
+                FirstFollowSets.or(workspace.lookaheads[item], kernelLookaheads[i]);
+            }
+            workspace.propagates[item] = propagates;
+            workspace.queued[item] = true;
+            unexpanded.push(item);
+        }
 
         while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+            final var item = unexpanded.pop();
+            workspace.queued[item] = false;
+            final var afterDot = itemAfterDot[item];
+            if (!isNonTerminal(afterDot)) {
+                continue;
+            }
+
+            for (final var start : startItemsOf[afterDot]) {
+                var changed = workspace.touch(start);
+                changed |= FirstFollowSets.or(workspace.lookaheads[start], firstAfterNext[item]);
+                // beta 可空时, a 本身 (包括占位符) 也是新项目的向前看符号
+                if (nullableAfterNext[item]) {
+                    changed |= FirstFollowSets.or(workspace.lookaheads[start], workspace.lookaheads[item]);
+                    if (workspace.propagates[item] && !workspace.propagates[start]) {
+                        workspace.propagates[start] = true;
+                        changed = true;
+                    }
+                }
+
+                if (changed && !workspace.queued[start]) {
+                    workspace.queued[start] = true;
+                    unexpanded.push(start);
+                }
+            }
         }
 
+        final var touched = workspace.touched;
+        final var result = new int[touched.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = touched.pop();
+        }
         return result;
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
-     *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
-     */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
-
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
-    }
-
-    /**
-     * 构造 LR(0) 规范项目集族
-     *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
+     * 在 LR(0) 规范项目集族的核上计算 LALR(1) 向前看符号
+     * <br>
+     * 对每个状态 I 的每个核心项目 K, 求 [K, #] 的闭包. 闭包中的每个 [B -> gamma . X delta, a] 都对应 GO(I, X) 的核心项目
+     * B -> gamma X . delta: 若 a 不是 #, 则 a 是该核心项目自发生成的向前看符号; 否则 K 的向前看符号都会传播给它.
+     * 随后从初始项目的 EOF 与各自发生成的符号出发, 沿传播关系迭代到不动点即可.
      */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
+    private void calcLookaheads() {
+        firstAfterNext = new long[itemProduction.length][];
+        nullableAfterNext = new boolean[itemProduction.length];
+        for (int item = 0; item < itemProduction.length; item++) {
+            if (isNonTerminal(itemAfterDot[item])) {
+                firstAfterNext[item] = sets.emptySet();
+                nullableAfterNext[item] = sets.addFirstOfSequence(itemProduction[item].body(), itemDot[item] + 1,
+                    firstAfterNext[item]);
+            }
+        }
 
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
+        kernelOffset = new int[kernels.size() + 1];
+        for (int state = 0; state < kernels.size(); state++) {
+            kernelOffset[state + 1] = kernelOffset[state] + kernels.get(state).items().length;
+        }
+        final var kernelItemCount = kernelOffset[kernels.size()];
+        kernelLookaheads = new long[kernelItemCount][];
+        for (int i = 0; i < kernelItemCount; i++) {
+            kernelLookaheads[i] = sets.emptySet();
+        }
 
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
+        // 以核心项目编号为下标, 得到其向前看符号会传播到的核心项目
+        final var propagateTo = new int[kernelItemCount][];
+        final var propagateCount = new int[kernelItemCount];
+
+        final var workspace = new LookaheadWorkspace();
+        for (int state = 0; state < kernels.size(); state++) {
+            final var kernel = kernels.get(state).items();
+            final var row = gotos.get(state);
+            for (int i = 0; i < kernel.length; i++) {
+                final var source = kernelOffset[state] + i;
+                for (final var item : constructLookaheadClosure(new int[]{kernel[i]}, null, true, workspace)) {
+                    final var afterDot = itemAfterDot[item];
+                    if (afterDot < 0) {
+                        continue;
+                    }
 
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+                    final var targetState = row[afterDot];
+                    final var target = kernelOffset[targetState]
+                        + Arrays.binarySearch(kernels.get(targetState).items(), item + 1);
+                    FirstFollowSets.or(kernelLookaheads[target], workspace.lookaheads[item]);
+                    if (workspace.propagates[item]) {
+                        if (propagateTo[source] == null) {
+                            propagateTo[source] = new int[4];
+                        } else if (propagateCount[source] == propagateTo[source].length) {
+                            propagateTo[source] = Arrays.copyOf(propagateTo[source], propagateCount[source] * 2);
+                        }
+                        propagateTo[source][propagateCount[source]++] = target;
+                    }
                 }
             }
         }
 
-        return new ArrayList<>(result);
+        // 初始项目 S -> . S' 是状态 0 唯一的核心项目, 其向前看符号是 EOF
+        FirstFollowSets.or(kernelLookaheads[0], sets.firstOf(TokenKind.eof()));
+
+        // 沿传播关系迭代, 只有向前看符号发生了变化的项目才需要再次传播
+        final var changed = new IntStack();
+        final var queued = new boolean[kernelItemCount];
+        for (int i = kernelItemCount - 1; i >= 0; i--) {
+            changed.push(i);
+            queued[i] = true;
+        }
+        while (!changed.isEmpty()) {
+            final var source = changed.pop();
+            queued[source] = false;
+            for (int i = 0; i < propagateCount[source]; i++) {
+                final var target = propagateTo[source][i];
+                if (FirstFollowSets.or(kernelLookaheads[target], kernelLookaheads[source]) && !queued[target]) {
+                    queued[target] = true;
+                    changed.push(target);
+                }
+            }
+        }
     }
 
+    //============================== 填表 ==============================
+
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
     private void genTable() {
+        final var argumentProduction = productions.get(0);
+        final var workspace = mode == Mode.LALR ? new LookaheadWorkspace() : null;
+
         // 依索引顺序对每个状态的每个项目
         for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
+            final var state = status.index();
+            final var row = gotos.get(state);
+
+            if (workspace != null) {
+                // 由核心项目的向前看符号求闭包, 得到每个完成项目的向前看符号
+                final var kernel = kernels.get(state).items();
+                final var lookaheads = Arrays.copyOfRange(kernelLookaheads, kernelOffset[state], kernelOffset[state + 1]);
+                constructLookaheadClosure(kernel, lookaheads, false, workspace);
+            }
+
+            for (final var item : closures.get(state)) {
+                final var afterDot = itemAfterDot[item];
 
                 // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
+                if (afterDot < 0) {
+                    final var production = itemProduction[item];
+                    if (production.equals(argumentProduction)) {
                         // S -> S' .
                         // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
                         status.setAction(TokenKind.eof(), Action.accept());
                     } else {
                         // A -> alpha .
                         // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
+                        // 构造 LALR(1) 分析表时, follow(A) 换成该项目在该状态中的向前看符号
+                        final var lookaheads = workspace != null
+                            ? workspace.lookaheads[item]
+                            : sets.followOf(production.head());
+                        for (final var a : sets.toTerminals(lookaheads)) {
                             status.setAction(a, Action.reduce(production));
                         }
                     }
 
                 } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
+                    final var symbol = symbols.get(afterDot);
+                    final var next = allStatusInIndexOrder.get(row[afterDot]);
 
                     if (symbol instanceof TokenKind tokenKind) {
                         // A -> alpha . a beta
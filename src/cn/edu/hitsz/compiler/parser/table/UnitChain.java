@@ -0,0 +1,16 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.List;
+
+/**
+ * 一串被驱动程序跳过的单产生式规约
+ * <br>
+ * 对于 {@code B -> id}, {@code A -> B}, {@code E -> A} 这样产生式体只有一个符号的产生式, 依次规约它们时状态栈只有栈顶在变化.
+ * 只要所有观察者都不需要分别处理这些规约, 驱动程序就可以一步直接转移到最后一次规约后的状态, 并以该记录告知观察者跳过了哪些规约.
+ *
+ * @param target      全部规约完成后压入状态栈的状态编号
+ * @param productions 按规约顺序排列的被跳过的产生式
+ * @see UnitChainTable
+ */
+public record UnitChain(int target, List<Production> productions) {
+}
@@ -0,0 +1,115 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * 单产生式规约链表, 由分析表与 "哪些产生式可以被跳过" 预先计算得到
+ * <br>
+ * 设按可跳过的单产生式 p 规约, 弹出其产生式体后露出的状态为 s, 向前看符号为 t. 此后驱动程序会转移到 GOTO(s, p 的头),
+ * 若该状态在 t 上的动作仍是按某个可跳过的单产生式规约, 由于只弹出了刚压入的状态, 露出的仍是 s, 于是又转移到 GOTO(s, ...), 直到动作不再是这样的规约为止.
+ * 整条链只由 (s, p, t) 决定, 因此可以预先算好链的终点与途经的产生式, 驱动程序规约时查表一步到位.
+ */
+public final class UnitChainTable {
+    /**
+     * 构造规约链表
+     *
+     * @param table      分析表
+     * @param bypassable 以产生式编号为参数, 判断该产生式是否可以被跳过; 只有产生式体长度为 1 的产生式才会被询问
+     * @return 规约链表
+     */
+    public static UnitChainTable build(ParseTable table, IntPredicate bypassable) {
+        return new UnitChainTable(table, bypassable);
+    }
+
+    // 以产生式编号为下标, 判断其是否为可跳过的单产生式
+    private final boolean[] bypassable;
+    private final int[] codes;
+    private final int codeCount;
+    // chains[s][p][码点 + 1] 为从状态 s 按产生式 p 开始的规约链, 没有链时为 null
+    private final UnitChain[][][] chains;
+
+    private UnitChainTable(ParseTable table, IntPredicate bypassable) {
+        final var productionCount = table.getProductionCount() + 1;
+        this.bypassable = new boolean[productionCount];
+        for (int production = 1; production < productionCount; production++) {
+            this.bypassable[production] = table.getBodyLength(production) == 1
+                && bypassable.test(production);
+        }
+
+        this.codes = TokenKind.allAllowedTokenKinds().values().stream().mapToInt(TokenKind::getCode).toArray();
+        this.codeCount = Arrays.stream(codes).max().orElse(-1) + 2;
+
+        final var stateCount = table.getStatusCount();
+        this.chains = new UnitChain[stateCount][][];
+        for (int state = 0; state < stateCount; state++) {
+            for (int production = 1; production < productionCount; production++) {
+                if (!this.bypassable[production] || table.getGoto(state, production) < 0) {
+                    continue;
+                }
+                if (chains[state] == null) {
+                    chains[state] = new UnitChain[productionCount][];
+                }
+
+                final var row = new UnitChain[codeCount];
+                for (final var code : codes) {
+                    row[code + 1] = follow(table, state, production, code, productionCount);
+                }
+                chains[state][production] = row;
+            }
+        }
+    }
+
+    /**
+     * 沿可跳过的单产生式规约走到底
+     */
+    private UnitChain follow(ParseTable table, int state, int production, int code, int productionCount) {
+        final var productions = new ArrayList<Production>();
+        var current = production;
+        while (true) {
+            productions.add(table.getProduction(current));
+            if (productions.size() > productionCount) {
+                throw new RuntimeException("Cyclic unit productions at state " + state);
+            }
+
+            final var target = table.getGoto(state, current);
+            if (target < 0) {
+                return null;
+            }
+
+            final var action = table.getAction(target, code);
+            final var next = CompiledLRTable.payloadOf(action);
+            if (CompiledLRTable.kindOf(action) != CompiledLRTable.REDUCE || !bypassable[next]) {
+                return new UnitChain(target, List.copyOf(productions));
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * @return 产生式是否为可跳过的单产生式
+     */
+    public boolean isBypassable(int production) {
+        return production < bypassable.length && bypassable[production];
+    }
+
+    /**
+     * @param state      弹出产生式体后露出的状态
+     * @param production 第一个被规约的可跳过的单产生式
+     * @param code       向前看符号的码点
+     * @return 规约链, 不存在时为 null
+     */
+    public UnitChain get(int state, int production, int code) {
+        final var byProduction = chains[state];
+        if (byProduction == null || byProduction[production] == null) {
+            return null;
+        }
+
+        final var index = code + 1;
+        return index >= 0 && index < codeCount ? byProduction[production][index] : null;
+    }
+}
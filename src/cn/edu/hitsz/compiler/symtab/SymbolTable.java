@@ -4,6 +4,7 @@ import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 符号表
@@ -16,7 +17,8 @@ public class SymbolTable {
 
     private Map<String,SymbolTableEntry> map;
     public SymbolTable(){
-        map = new HashMap<>();
+        // 异步分派观察者时, 词法分析与语义分析可能在不同线程上同时访问符号表
+        map = new ConcurrentHashMap<>();
     }
     
     /**
@@ -78,11 +80,9 @@ public class SymbolTable {
     }
 
     /**
-     * 将符号表按格式输出
-     *
-     * @param path 输出文件路径
+     * @return 符号表按格式输出的内容, 按名字排序, 每个条目一行
      */
-    public void dumpTable(String path) {
+    public List<String> dumpLines() {
         final var entriesInOrder = new ArrayList<>(getAllEntries().values());
         entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
 
@@ -91,8 +91,16 @@ public class SymbolTable {
             // null in %s will be "null"
             lines.add("(%s, %s)".formatted(entry.getText(), entry.getType()));
         }
+        return lines;
+    }
 
-        FileUtils.writeLines(path, lines);
+    /**
+     * 将符号表按格式输出
+     *
+     * @param path 输出文件路径
+     */
+    public void dumpTable(String path) {
+        FileUtils.writeLines(path, dumpLines());
     }
 }
 
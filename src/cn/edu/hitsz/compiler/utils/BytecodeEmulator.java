@@ -0,0 +1,650 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 把 IR 翻译为 JVM 字节码执行的类, 结果与 {@link IREmulator} 完全相同
+ * <br>
+ * 加载时把 IR 翻译为一个隐藏类 (hidden class), 由 JVM 解释执行, 多次执行后由 JIT 编译为本地代码:
+ * <ul>
+ *     <li>IR 变量成为 JVM 局部变量, 立即数直接写在字节码中</li>
+ *     <li>指令按字节码长度切分为多个块方法, 以免超出方法长度的上限, 也使每个块都足够小而能被 JIT 编译.
+ *     跨块存活的变量在块的入口从帧中读出, 在出口写回帧中</li>
+ *     <li>只有最后一条 RET 决定结果, 它的值成为 run 方法的返回值; 之后的指令不会影响结果, 因此不再翻译</li>
+ * </ul>
+ * 读取未赋值的变量时, 或者 IR 无法翻译为合法的类时 (如常量池溢出), 退回到 {@link SlotEmulator} 执行.
+ */
+public class BytecodeEmulator {
+    public static BytecodeEmulator load(IRBuffer buffer) {
+        return new BytecodeEmulator(buffer);
+    }
+
+    public static BytecodeEmulator load(List<Instruction> instructions) {
+        return new BytecodeEmulator(IRBuffer.of(instructions));
+    }
+
+    public Optional<Integer> execute() {
+        if (fallback != null) {
+            return fallback.execute();
+        } else if (program == null) {
+            // 没有 RET
+            return Optional.empty();
+        }
+
+        try {
+            // 各个类依次执行, 最后一个类包含最后一条 RET
+            final var frame = new int[frameSize];
+            var returnValue = 0;
+            for (final var part : program) {
+                returnValue = (int) part.invokeExact(frame);
+            }
+            return Optional.of(returnValue);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return 是否退回到解释器执行
+     */
+    public boolean isFallback() {
+        return fallback != null;
+    }
+
+    private BytecodeEmulator(IRBuffer buffer) {
+        final var size = buffer.size();
+        final var variableCount = buffer.getVariableCount();
+
+        // 找出最后一条 RET, 并检查是否读取了未赋值的变量
+        final var assigned = new boolean[variableCount];
+        var readsUnassigned = false;
+        var lastReturn = -1;
+        for (var i = 0; i < size; i++) {
+            final var lhs = buffer.getLHS(i);
+            final var rhs = buffer.getRHS(i);
+            readsUnassigned |= IRBuffer.isVariable(lhs) && !assigned[lhs];
+            readsUnassigned |= IRBuffer.isVariable(rhs) && !assigned[rhs];
+            if (buffer.getKind(i).isReturn()) {
+                lastReturn = i;
+            } else {
+                assigned[buffer.getResult(i)] = true;
+            }
+        }
+
+        // 帧的前 variableCount 个槽位为各变量, 最后一个槽位保存返回值
+        this.frameSize = variableCount + 1;
+        if (readsUnassigned) {
+            this.program = null;
+            this.fallback = SlotEmulator.load(buffer);
+        } else if (lastReturn < 0) {
+            this.program = null;
+            this.fallback = null;
+        } else {
+            MethodHandle[] program;
+            try {
+                final var classes = new ProgramTranslator(buffer, lastReturn).translate();
+                program = new MethodHandle[classes.size()];
+                for (var i = 0; i < program.length; i++) {
+                    program[i] = define(classes.get(i));
+                }
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                program = null;
+            }
+            this.program = program;
+            this.fallback = program == null ? SlotEmulator.load(buffer) : null;
+        }
+    }
+
+    private static MethodHandle define(byte[] classBytes) throws ReflectiveOperationException {
+        final var lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+        return lookup.findStatic(lookup.lookupClass(), RUN_METHOD, MethodType.methodType(int.class, int[].class));
+    }
+
+    /**
+     * 隐藏类的类名, 必须与本类位于同一个包中
+     */
+    private static final String CLASS_NAME = "cn/edu/hitsz/compiler/utils/CompiledIR";
+    private static final String RUN_METHOD = "run";
+    private static final String RUN_DESCRIPTOR = "([I)I";
+    private static final String BLOCK_DESCRIPTOR = "([I)V";
+
+    /**
+     * 块方法的字节码长度的估计上限. HotSpot 默认不会 JIT 编译长于 8000 字节的方法
+     */
+    private static final int BLOCK_BYTES = 7000;
+    /**
+     * 每个分组方法调用的块方法个数, 使分组方法与 run 方法都不超过方法长度的上限
+     */
+    private static final int BLOCKS_PER_GROUP = 4096;
+    /**
+     * 常量池条目数超过该值后另起一个类. 一个块至多加入数千个条目, 因此不会超出 65535 的上限
+     */
+    private static final int POOL_THRESHOLD = 50000;
+
+    private final int frameSize;
+    /**
+     * 依次执行的各个类的 run 方法
+     */
+    private final MethodHandle[] program;
+    private final SlotEmulator fallback;
+
+    /**
+     * 把一段 IR 翻译为隐藏类的类文件
+     */
+    private static final class ProgramTranslator {
+        ProgramTranslator(IRBuffer buffer, int lastReturn) {
+            this.buffer = buffer;
+            this.lastReturn = lastReturn;
+            this.returnSlot = buffer.getVariableCount();
+            this.lastRead = new int[buffer.getVariableCount()];
+            this.locals = new int[buffer.getVariableCount()];
+            this.stamps = new int[buffer.getVariableCount()];
+            this.writeStamps = new int[buffer.getVariableCount()];
+            Arrays.fill(lastRead, -1);
+            Arrays.fill(stamps, -1);
+
+            for (var i = 0; i <= lastReturn; i++) {
+                final var lhs = buffer.getLHS(i);
+                final var rhs = buffer.getRHS(i);
+                if (IRBuffer.isVariable(lhs)) {
+                    lastRead[lhs] = i;
+                }
+                if (IRBuffer.isVariable(rhs)) {
+                    lastRead[rhs] = i;
+                }
+            }
+        }
+
+        /**
+         * @return 依次执行的各个类的类文件, 常量池将满时会另起一个类
+         */
+        List<byte[]> translate() {
+            final var classes = new ArrayList<byte[]>();
+            var assembler = new ClassAssembler(CLASS_NAME);
+            final var blocks = new ArrayList<String>();
+
+            // 按估计的字节码长度把指令切分为块
+            var block = 0;
+            var begin = 0;
+            var count = 0;
+            var touched = 0;
+            for (var i = 0; i <= lastReturn; i++) {
+                final var fresh = countFresh(i, block);
+                if (count > 0 && estimate(count + 1, touched + fresh) > BLOCK_BYTES) {
+                    blocks.add(emitBlock(assembler, block++, begin, i));
+                    if (assembler.getPoolCount() > POOL_THRESHOLD) {
+                        classes.add(finish(assembler, blocks));
+                        assembler = new ClassAssembler(CLASS_NAME);
+                        blocks.clear();
+                    }
+                    begin = i;
+                    count = 0;
+                    touched = countFresh(i, block);
+                } else {
+                    touched += fresh;
+                }
+                markTouched(i, block);
+                count++;
+            }
+            blocks.add(emitBlock(assembler, block, begin, lastReturn + 1));
+            classes.add(finish(assembler, blocks));
+            return classes;
+        }
+
+        /**
+         * 加入依次调用各块的方法, 并写出类文件
+         * <br>
+         * 分组方法依次调用各块, run 方法依次调用各分组后返回帧中的返回值
+         */
+        private byte[] finish(ClassAssembler assembler, List<String> blocks) {
+            final var groups = new ArrayList<String>();
+            for (var from = 0; from < blocks.size(); from += BLOCKS_PER_GROUP) {
+                final var name = "g" + groups.size();
+                final var code = new CodeBuffer(assembler);
+                for (final var block : blocks.subList(from, Math.min(from + BLOCKS_PER_GROUP, blocks.size()))) {
+                    code.invokeBlock(block);
+                }
+                code.op(RETURN);
+                assembler.addMethod(name, BLOCK_DESCRIPTOR, 1, 1, code);
+                groups.add(name);
+            }
+
+            final var run = new CodeBuffer(assembler);
+            groups.forEach(run::invokeBlock);
+            run.op(ALOAD_0);
+            run.pushInt(returnSlot);
+            run.op(IALOAD);
+            run.op(IRETURN);
+            assembler.addMethod(RUN_METHOD, RUN_DESCRIPTOR, 2, 1, run);
+
+            return assembler.toByteArray();
+        }
+
+        private static int estimate(int instructions, int variables) {
+            // 每条指令至多两次 wide iload, 一次运算与一次 wide istore; 每个变量至多一次读入与一次写回
+            return instructions * 13 + variables * 18 + 16;
+        }
+
+        /**
+         * @return 第 index 条指令用到的, 尚未在当前块中出现过的变量个数
+         */
+        private int countFresh(int index, int block) {
+            // 同一变量在一条指令中出现多次时会被重复计数, 只会使估计偏大
+            var fresh = 0;
+            for (final var operand : operandsOf(index)) {
+                if (IRBuffer.isVariable(operand) && stamps[operand] != block) {
+                    fresh++;
+                }
+            }
+            return fresh;
+        }
+
+        private void markTouched(int index, int block) {
+            for (final var operand : operandsOf(index)) {
+                if (IRBuffer.isVariable(operand)) {
+                    stamps[operand] = block;
+                }
+            }
+        }
+
+        private int[] operandsOf(int index) {
+            return new int[]{buffer.getResult(index), buffer.getLHS(index), buffer.getRHS(index)};
+        }
+
+        /**
+         * 翻译第 begin 条到第 end 条 (不含) 指令为一个块方法
+         *
+         * @return 块方法的方法名
+         */
+        private String emitBlock(ClassAssembler assembler, int block, int begin, int end) {
+            // 先确定块内各变量对应的局部变量, 以及需要在入口读入的变量 (读取先于块内的赋值)
+            final var stamp = -2 - block;
+            final var liveIn = new ArrayList<Integer>();
+            final var written = new ArrayList<Integer>();
+            var localCount = 1;
+            for (var i = begin; i < end; i++) {
+                if (skip(i)) {
+                    continue;
+                }
+                for (final var operand : new int[]{buffer.getLHS(i), buffer.getRHS(i)}) {
+                    if (IRBuffer.isVariable(operand) && stamps[operand] != stamp) {
+                        stamps[operand] = stamp;
+                        locals[operand] = localCount++;
+                        liveIn.add(operand);
+                    }
+                }
+                final var result = buffer.getResult(i);
+                if (!IRBuffer.isVariable(result)) {
+                    continue;
+                }
+                if (stamps[result] != stamp) {
+                    stamps[result] = stamp;
+                    locals[result] = localCount++;
+                }
+                if (writeStamps[result] != stamp) {
+                    writeStamps[result] = stamp;
+                    written.add(result);
+                }
+            }
+
+            final var code = new CodeBuffer(assembler);
+            for (final var variable : liveIn) {
+                code.op(ALOAD_0);
+                code.pushInt(variable);
+                code.op(IALOAD);
+                code.local(ISTORE, locals[variable]);
+            }
+
+            for (var i = begin; i < end; i++) {
+                if (skip(i)) {
+                    continue;
+                }
+                final var kind = buffer.getKind(i);
+                if (kind == InstructionKind.RET) {
+                    code.op(ALOAD_0);
+                    code.pushInt(returnSlot);
+                    pushOperand(code, buffer.getLHS(i));
+                    code.op(IASTORE);
+                    continue;
+                }
+
+                pushOperand(code, buffer.getLHS(i));
+                if (kind != InstructionKind.MOV) {
+                    pushOperand(code, buffer.getRHS(i));
+                    code.op(switch (kind) {
+                        case ADD -> IADD;
+                        case SUB -> ISUB;
+                        case MUL -> IMUL;
+                        default -> throw new RuntimeException("Unknown instruction kind: " + kind);
+                    });
+                }
+                code.local(ISTORE, locals[buffer.getResult(i)]);
+            }
+
+            // 只写回之后的块还会读取的变量
+            for (final var variable : written) {
+                if (lastRead[variable] >= end) {
+                    code.op(ALOAD_0);
+                    code.pushInt(variable);
+                    code.local(ILOAD, locals[variable]);
+                    code.op(IASTORE);
+                }
+            }
+            code.op(RETURN);
+
+            final var name = "b" + block;
+            assembler.addMethod(name, BLOCK_DESCRIPTOR, 3, localCount, code);
+            return name;
+        }
+
+        /**
+         * @return 第 index 条指令是否不影响结果, 即最后一条之前的 RET
+         */
+        private boolean skip(int index) {
+            return index != lastReturn && buffer.getKind(index).isReturn();
+        }
+
+        private void pushOperand(CodeBuffer code, int operand) {
+            if (IRBuffer.isVariable(operand)) {
+                code.local(ILOAD, locals[operand]);
+            } else {
+                code.pushInt(buffer.getImmediate(operand));
+            }
+        }
+
+        private final IRBuffer buffer;
+        private final int lastReturn;
+        private final int returnSlot;
+        /**
+         * 各变量最后一次被读取的指令下标, 从未被读取为 -1
+         */
+        private final int[] lastRead;
+        /**
+         * 各变量在当前块中对应的局部变量下标
+         */
+        private final int[] locals;
+        /**
+         * 切分与翻译时标记变量是否已在当前块中出现
+         */
+        private final int[] stamps;
+        /**
+         * 翻译时标记变量是否已在当前块中被赋值
+         */
+        private final int[] writeStamps;
+    }
+
+    //============================== 类文件 ==============================
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int IALOAD = 0x2e;
+    private static final int ISTORE = 0x36;
+    private static final int IASTORE = 0x4f;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+
+    /**
+     * 一个方法的字节码
+     */
+    private static final class CodeBuffer {
+        CodeBuffer(ClassAssembler assembler) {
+            this.assembler = assembler;
+        }
+
+        void op(int opcode) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) opcode;
+        }
+
+        void u2(int value) {
+            op(value >>> 8);
+            op(value);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                op(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(assembler.integer(value));
+            }
+        }
+
+        /**
+         * 读写局部变量, 下标大于 255 时使用 wide 前缀
+         *
+         * @param opcode ILOAD 或 ISTORE
+         */
+        void local(int opcode, int index) {
+            if (index <= 3) {
+                // iload_0 为 0x1a, istore_0 为 0x3b, 其后依次为下标 1 到 3 的短格式
+                op((opcode == ILOAD ? 0x1a : 0x3b) + index);
+            } else if (index <= 255) {
+                op(opcode);
+                op(index);
+            } else {
+                op(WIDE);
+                op(opcode);
+                u2(index);
+            }
+        }
+
+        void invokeBlock(String name) {
+            op(ALOAD_0);
+            op(INVOKESTATIC);
+            u2(assembler.method(name, BLOCK_DESCRIPTOR));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private final ClassAssembler assembler;
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+    }
+
+    /**
+     * 只包含静态方法, 且方法内没有跳转的类文件
+     * <br>
+     * 没有跳转的方法不需要 StackMapTable, 因此只需写出常量池与各方法的 Code 属性.
+     */
+    private static final class ClassAssembler {
+        ClassAssembler(String className) {
+            this.thisClass = classRef(className);
+            this.superClass = classRef("java/lang/Object");
+            this.code = utf8("Code");
+        }
+
+        int getPoolCount() {
+            return poolCount;
+        }
+
+        int integer(int value) {
+            // 整数常量很多, 单独以整数为键以免为每个常量构造字符串
+            final var index = integers.get(value);
+            if (index != null) {
+                return index;
+            }
+            final var newIndex = constant("I" + value, out -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+            integers.put(value, newIndex);
+            return newIndex;
+        }
+
+        int method(String name, String descriptor) {
+            return constant("M" + name + descriptor, out -> {
+                final var nameAndType = nameAndType(name, descriptor);
+                out.writeByte(CONSTANT_METHODREF);
+                out.writeShort(thisClass);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        void addMethod(String name, String descriptor, int maxStack, int maxLocals, CodeBuffer buffer) {
+            final var bytes = buffer.toByteArray();
+            if (bytes.length >= MAX_CODE_LENGTH) {
+                throw new RuntimeException("Method %s is too large: %d bytes".formatted(name, bytes.length));
+            }
+
+            try {
+                methods.writeShort(ACC_PUBLIC | ACC_STATIC);
+                methods.writeShort(utf8(name));
+                methods.writeShort(utf8(descriptor));
+                methods.writeShort(1);
+                methods.writeShort(code);
+                methods.writeInt(12 + bytes.length);
+                methods.writeShort(maxStack);
+                methods.writeShort(maxLocals);
+                methods.writeInt(bytes.length);
+                methods.write(bytes);
+                methods.writeShort(0);
+                methods.writeShort(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            methodCount++;
+        }
+
+        byte[] toByteArray() {
+            if (poolCount > MAX_POOL_COUNT) {
+                throw new RuntimeException("Too many constants: " + poolCount);
+            }
+
+            final var bytes = new ByteArrayOutputStream();
+            try (final var out = new DataOutputStream(bytes)) {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(CLASS_FILE_VERSION);
+                out.writeShort(poolCount);
+                poolBytes.writeTo(out);
+                out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort(methodCount);
+                methodBytes.writeTo(out);
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private int utf8(String value) {
+            return constant("U" + value, out -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            });
+        }
+
+        private int classRef(String name) {
+            return constant("C" + name, out -> {
+                final var nameIndex = utf8(name);
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            return constant("N" + name + descriptor, out -> {
+                final var nameIndex = utf8(name);
+                final var descriptorIndex = utf8(descriptor);
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+
+        /**
+         * 加入一个常量池条目, 相同的条目只加入一次. 条目引用的其他条目须在写出前先行加入
+         */
+        private int constant(String key, PoolWriter writer) {
+            final var index = pool.get(key);
+            if (index != null) {
+                return index;
+            }
+
+            // 先写入临时缓冲区, 使 writer 中先行加入的条目排在本条目之前
+            final var entry = new ByteArrayOutputStream();
+            try (final var out = new DataOutputStream(entry)) {
+                writer.write(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            poolBytes.writeBytes(entry.toByteArray());
+            final var newIndex = poolCount++;
+            pool.put(key, newIndex);
+            return newIndex;
+        }
+
+        @FunctionalInterface
+        private interface PoolWriter {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        private static final int CLASS_FILE_VERSION = 61;
+        private static final int MAX_POOL_COUNT = 0xFFFF;
+        private static final int MAX_CODE_LENGTH = 0x10000;
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_STATIC = 0x0008;
+        private static final int ACC_FINAL = 0x0010;
+        private static final int ACC_SUPER = 0x0020;
+
+        private final Map<String, Integer> pool = new HashMap<>();
+        private final Map<Integer, Integer> integers = new HashMap<>();
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private int poolCount = 1;
+        private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        private final DataOutputStream methods = new DataOutputStream(methodBytes);
+        private int methodCount = 0;
+        private final int thisClass;
+        private final int superClass;
+        private final int code;
+    }
+}
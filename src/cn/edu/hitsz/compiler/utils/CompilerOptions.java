@@ -0,0 +1,394 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.pass.PassManager;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 编译器的运行选项, 由命令行参数解析得到
+ * <br>
+ * 参数形如 {@code --name} 或 {@code --name=value}. 未给出的选项均取默认值, 此时编译器的行为与不带参数运行时完全相同.
+ */
+public final class CompilerOptions {
+    /**
+     * LR 分析表的来源
+     */
+    public enum TableSource {
+        /**
+         * 读取第三方程序构造的 CSV 分析表
+         */
+        CSV,
+        /**
+         * 由 TableGenerator 从 grammar.txt 构造 SLR(1) 分析表
+         */
+        SLR,
+        /**
+         * 由 TableGenerator 从 grammar.txt 构造 LALR(1) 分析表
+         */
+        LALR
+    }
+
+    /**
+     * LR 分析的驱动方式
+     */
+    public enum Driver {
+        /**
+         * 查表的主循环
+         */
+        TABLE,
+        /**
+         * 运行时由分析表生成, 编译并加载的专用驱动程序
+         */
+        GENERATED
+    }
+
+    /**
+     * 模拟执行 IR 的方式
+     */
+    public enum Emulator {
+        /**
+         * 以变量为键, 在哈希表中保存变量的值
+         */
+        MAP,
+        /**
+         * 把变量与立即数解析为槽位, 在 int 数组上执行
+         */
+        SLOT,
+        /**
+         * 翻译为 JVM 字节码, 由 JVM 执行
+         */
+        BYTECODE
+    }
+
+    /**
+     * 解析命令行参数
+     *
+     * @param args 命令行参数
+     * @return 解析出的选项
+     * @throws RuntimeException 存在未知的或格式错误的参数
+     */
+    public static CompilerOptions parse(String[] args) {
+        final var options = new CompilerOptions();
+        for (final var arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new RuntimeException("Illegal argument: " + arg);
+            }
+
+            final var words = arg.substring(2).split("=", 2);
+            final var name = words[0];
+            final var value = words.length > 1 ? words[1] : null;
+            switch (name) {
+                case "stream-tokens" -> options.streamTokens = true;
+                case "keep-tokens" -> options.keepTokens = parseBoolean(name, value);
+                case "table-cache" -> options.tableCache = parseBoolean(name, value);
+                case "fused-sdt" -> options.fusedTranslation = true;
+                case "async-observers" -> options.asyncObservers = true;
+                case "table" -> options.tableSource = parseTableSource(value);
+                case "parallel-table" -> options.parallelTable = true;
+                case "compress-table" -> options.compressTable = true;
+                case "bypass-unit" -> options.bypassUnitChains = true;
+                case "driver" -> options.driver = parseDriver(value);
+                case "dump-generated-parser" -> options.generatedParserOutput =
+                    value == null ? FilePathConfig.GENERATED_PARSER_PATH : parseString(name, value);
+                case "parallel-parse" -> options.parallelParse = true;
+                case "emulator" -> options.emulator = parseEmulator(value);
+                case "profile-emulator" -> options.profileEmulator = true;
+                case "trace-size" -> options.traceSize = parsePositiveInt(name, value);
+                case "opt" -> options.optLevel = parseOptLevel(value);
+                case "passes" -> options.passes = parsePassNames(name, value, false);
+                case "dump-ir-after" -> options.dumpIRAfter = Set.copyOf(parsePassNames(name, value, true));
+                case "batch" -> options.batchInput = parseString(name, value);
+                case "batch-out" -> options.batchOutput = parseString(name, value);
+                case "jobs" -> options.jobs = parsePositiveInt(name, value);
+                case "serve" -> options.serve = true;
+                case "port" -> options.port = parsePositiveInt(name, value);
+                default -> throw new RuntimeException("Unknown option: " + arg);
+            }
+        }
+
+        return options;
+    }
+
+    /**
+     * @return 默认选项
+     */
+    public static CompilerOptions defaults() {
+        return new CompilerOptions();
+    }
+
+    /**
+     * @return 词法分析是否按需进行, 与语法分析交替执行
+     */
+    public boolean isStreamTokens() {
+        return streamTokens;
+    }
+
+    /**
+     * @return 按需分析时是否仍保存 token 列表以输出 token.txt
+     */
+    public boolean isKeepTokens() {
+        return keepTokens;
+    }
+
+    /**
+     * @return 是否使用 LR 分析表的二进制缓存
+     */
+    public boolean isTableCache() {
+        return tableCache;
+    }
+
+    /**
+     * @return 是否把产生式收集, 语义检查与 IR 生成合并到同一个语法制导翻译器中执行
+     */
+    public boolean isFusedTranslation() {
+        return fusedTranslation;
+    }
+
+    /**
+     * @return 是否让各观察者在各自的线程上异步处理语法分析事件
+     */
+    public boolean isAsyncObservers() {
+        return asyncObservers;
+    }
+
+    /**
+     * @return LR 分析表的来源
+     */
+    public TableSource getTableSource() {
+        return tableSource;
+    }
+
+    /**
+     * @return 由 TableGenerator 构造分析表时是否并行构造规范项目集族
+     */
+    public boolean isParallelTable() {
+        return parallelTable;
+    }
+
+    /**
+     * @return 语法分析时是否使用压缩存储的分析表
+     */
+    public boolean isCompressTable() {
+        return compressTable;
+    }
+
+    /**
+     * @return 语法分析时是否跳过所有观察者都不需要的单产生式规约链
+     */
+    public boolean isBypassUnitChains() {
+        return bypassUnitChains;
+    }
+
+    /**
+     * @return LR 分析的驱动方式
+     */
+    public Driver getDriver() {
+        return driver;
+    }
+
+    /**
+     * @return 使用生成的驱动程序时, 其源代码的输出路径; 为 null 时不输出, 只给出 --dump-generated-parser 时为默认路径
+     */
+    public String getGeneratedParserOutput() {
+        return generatedParserOutput;
+    }
+
+    /**
+     * @return 是否在顶层语句的边界处分块并行地进行语法分析
+     */
+    public boolean isParallelParse() {
+        return parallelParse;
+    }
+
+    /**
+     * @return 模拟执行 IR 的方式
+     */
+    public Emulator getEmulator() {
+        return emulator;
+    }
+
+    /**
+     * @return 是否剖析 IR 的模拟执行. 开启时由 IREmulator 的插桩执行循环模拟执行, 不论 {@link #getEmulator()} 为何
+     */
+    public boolean isProfileEmulator() {
+        return profileEmulator;
+    }
+
+    /**
+     * @return 剖析时执行轨迹最多保留的指令条数
+     */
+    public int getTraceSize() {
+        return traceSize;
+    }
+
+    /**
+     * @return IR 的优化级别
+     */
+    public PassManager.Level getOptLevel() {
+        return optLevel;
+    }
+
+    /**
+     * @return 依次执行的 IR 变换遍的名字, 给出时代替优化级别对应的遍; 为 null 时按优化级别执行
+     */
+    public List<String> getPasses() {
+        return passes;
+    }
+
+    /**
+     * @return 执行后输出 IR 的遍的名字, 可以包含 {@link PassManager#ALL_PASSES}
+     */
+    public Set<String> getDumpIRAfter() {
+        return dumpIRAfter;
+    }
+
+    /**
+     * @return 批量编译的输入, 为源代码目录或清单文件; 为 null 时只编译默认的输入文件
+     */
+    public String getBatchInput() {
+        return batchInput;
+    }
+
+    /**
+     * @return 批量编译的输出目录, 每个源文件的结果输出到其中以源文件命名的子目录
+     */
+    public String getBatchOutput() {
+        return batchOutput;
+    }
+
+    /**
+     * @return 批量编译时同时编译的文件数
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * @return 是否作为常驻的编译服务器运行
+     */
+    public boolean isServe() {
+        return serve;
+    }
+
+    /**
+     * @return 编译服务器监听的回环端口
+     */
+    public int getPort() {
+        return port;
+    }
+
+    private static TableSource parseTableSource(String value) {
+        if (value == null) {
+            throw new RuntimeException("Option table expects one of csv, slr, lalr");
+        }
+        return switch (value) {
+            case "csv" -> TableSource.CSV;
+            case "slr" -> TableSource.SLR;
+            case "lalr" -> TableSource.LALR;
+            default -> throw new RuntimeException("Option table expects one of csv, slr, lalr, but given " + value);
+        };
+    }
+
+    private static Driver parseDriver(String value) {
+        if (value == null) {
+            throw new RuntimeException("Option driver expects one of table, generated");
+        }
+        return switch (value) {
+            case "table" -> Driver.TABLE;
+            case "generated" -> Driver.GENERATED;
+            default -> throw new RuntimeException("Option driver expects one of table, generated, but given " + value);
+        };
+    }
+
+    private static Emulator parseEmulator(String value) {
+        if (value == null) {
+            throw new RuntimeException("Option emulator expects one of map, slot, bytecode");
+        }
+        return switch (value) {
+            case "map" -> Emulator.MAP;
+            case "slot" -> Emulator.SLOT;
+            case "bytecode" -> Emulator.BYTECODE;
+            default -> throw new RuntimeException("Option emulator expects one of map, slot, bytecode, but given " + value);
+        };
+    }
+
+    private static PassManager.Level parseOptLevel(String value) {
+        if (value == null) {
+            throw new RuntimeException("Option opt expects one of O0, O1, O2");
+        }
+        return switch (value) {
+            case "O0" -> PassManager.Level.O0;
+            case "O1" -> PassManager.Level.O1;
+            case "O2" -> PassManager.Level.O2;
+            default -> throw new RuntimeException("Option opt expects one of O0, O1, O2, but given " + value);
+        };
+    }
+
+    private static List<String> parsePassNames(String name, String value, boolean allowAll) {
+        final var names = List.of(parseString(name, value).split(","));
+        for (final var pass : names) {
+            if (!PassManager.getPassNames().contains(pass) && !(allowAll && pass.equals(PassManager.ALL_PASSES))) {
+                throw new RuntimeException("Option %s expects pass names among %s, but given %s"
+                    .formatted(name, String.join(", ", PassManager.getPassNames()), pass));
+            }
+        }
+        return names;
+    }
+
+    private static String parseString(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new RuntimeException("Option %s expects a value".formatted(name));
+        }
+        return value;
+    }
+
+    private static int parsePositiveInt(String name, String value) {
+        try {
+            final var number = Integer.parseInt(parseString(name, value));
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // 与非正数一同在下面报错
+        }
+        throw new RuntimeException("Option %s expects a positive integer, but given %s".formatted(name, value));
+    }
+
+    private static boolean parseBoolean(String name, String value) {
+        if (value == null || value.equals("true")) {
+            return true;
+        } else if (value.equals("false")) {
+            return false;
+        } else {
+            throw new RuntimeException("Option %s expects true or false, but given %s".formatted(name, value));
+        }
+    }
+
+    private CompilerOptions() {
+    }
+
+    private boolean streamTokens = false;
+    private boolean keepTokens = true;
+    private boolean tableCache = true;
+    private boolean fusedTranslation = false;
+    private boolean asyncObservers = false;
+    private TableSource tableSource = TableSource.CSV;
+    private boolean parallelTable = false;
+    private boolean compressTable = false;
+    private boolean bypassUnitChains = false;
+    private Driver driver = Driver.TABLE;
+    private String generatedParserOutput = null;
+    private boolean parallelParse = false;
+    private Emulator emulator = Emulator.MAP;
+    private boolean profileEmulator = false;
+    private int traceSize = EmulatorProfile.DEFAULT_TRACE_CAPACITY;
+    private PassManager.Level optLevel = PassManager.Level.O0;
+    private List<String> passes = null;
+    private Set<String> dumpIRAfter = Set.of();
+    private String batchInput = null;
+    private String batchOutput = "data/out/batch";
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private boolean serve = false;
+    private int port = 5140;
+}
@@ -0,0 +1,190 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * IR 模拟执行时收集的剖析数据
+ * <br>
+ * 交给 {@link IREmulator#setProfile} 后, 模拟器改用带插桩的执行循环, 记录:
+ * <ul>
+ *     <li>每种 {@link InstructionKind} 的执行次数</li>
+ *     <li>每个变量被读取与赋值的次数, 按首次出现的顺序</li>
+ *     <li>最近执行的若干条指令及其结果值, 保存在固定大小的环形缓冲区中</li>
+ * </ul>
+ * 不设置剖析数据时模拟器仍使用原有的执行循环, 因此几乎没有额外开销.
+ */
+public class EmulatorProfile {
+    /**
+     * 默认的执行轨迹容量
+     */
+    public static final int DEFAULT_TRACE_CAPACITY = 4096;
+
+    /**
+     * @param traceCapacity 执行轨迹最多保留的指令条数, 更早的记录会被覆盖
+     */
+    public EmulatorProfile(int traceCapacity) {
+        if (traceCapacity <= 0) {
+            throw new RuntimeException("Trace capacity must be positive: " + traceCapacity);
+        }
+        this.traceIndices = new int[traceCapacity];
+        this.traceInstructions = new Instruction[traceCapacity];
+        this.traceValues = new int[traceCapacity];
+        this.traceHasValue = new boolean[traceCapacity];
+    }
+
+    //============================== 记录 ==============================
+
+    void begin(int instructionCount) {
+        this.instructionCount = instructionCount;
+        this.startTime = System.nanoTime();
+    }
+
+    void end() {
+        this.elapsedNanos = System.nanoTime() - startTime;
+    }
+
+    void read(IRVariable variable) {
+        countersOf(variable)[READS]++;
+    }
+
+    void write(IRVariable variable) {
+        countersOf(variable)[WRITES]++;
+    }
+
+    /**
+     * 记录执行了一条指令
+     *
+     * @param index       指令的下标
+     * @param instruction 指令
+     * @param value       指令的结果值, RET 为返回值, 读取了未赋值的变量时为 null
+     */
+    void executed(int index, Instruction instruction, Integer value) {
+        kindCounts[instruction.getKind().ordinal()]++;
+
+        final var slot = (int) (executed % traceIndices.length);
+        traceIndices[slot] = index;
+        traceInstructions[slot] = instruction;
+        traceHasValue[slot] = value != null;
+        traceValues[slot] = value != null ? value : 0;
+        executed++;
+    }
+
+    private long[] countersOf(IRVariable variable) {
+        return variables.computeIfAbsent(variable, v -> new long[2]);
+    }
+
+    //============================== 读取 ==============================
+
+    /**
+     * @return 执行的指令总数
+     */
+    public long getExecuted() {
+        return executed;
+    }
+
+    /**
+     * @return 某种指令的执行次数
+     */
+    public long getCount(InstructionKind kind) {
+        return kindCounts[kind.ordinal()];
+    }
+
+    /**
+     * @return 各变量的读取次数与赋值次数, 格式为 name,reads,writes 的 CSV
+     */
+    public List<String> dumpVariables() {
+        final var lines = new ArrayList<String>(variables.size() + 1);
+        lines.add("name,reads,writes");
+        variables.forEach((variable, counters) ->
+            lines.add("%s,%d,%d".formatted(variable.getName(), counters[READS], counters[WRITES])));
+        return lines;
+    }
+
+    /**
+     * @return 环形缓冲区中的执行轨迹, 按执行顺序, 格式为 seq,index,kind,result,value 的 CSV. 没有结果值时 value 为空
+     */
+    public List<String> dumpTrace() {
+        final var lines = new ArrayList<String>(traceSize() + 1);
+        lines.add("seq,index,kind,result,value");
+        for (var seq = executed - traceSize(); seq < executed; seq++) {
+            final var slot = (int) (seq % traceIndices.length);
+            final var instruction = traceInstructions[slot];
+            final var result = instruction.getKind().isReturn() ? "" : instruction.getResult().getName();
+            final var value = traceHasValue[slot] ? String.valueOf(traceValues[slot]) : "";
+            lines.add("%d,%d,%s,%s,%s".formatted(seq, traceIndices[slot], instruction.getKind(), result, value));
+        }
+        return lines;
+    }
+
+    /**
+     * @return 全部剖析数据, 格式为 JSON
+     */
+    public List<String> dumpJson() {
+        final var lines = new ArrayList<String>();
+        lines.add("{");
+        lines.add("  \"instructions\": %d,".formatted(instructionCount));
+        lines.add("  \"executed\": %d,".formatted(executed));
+        lines.add("  \"elapsedNanos\": %d,".formatted(elapsedNanos));
+
+        lines.add("  \"kinds\": {");
+        final var kinds = InstructionKind.values();
+        for (var i = 0; i < kinds.length; i++) {
+            lines.add("    \"%s\": %d%s".formatted(kinds[i], kindCounts[i], i + 1 < kinds.length ? "," : ""));
+        }
+        lines.add("  },");
+
+        lines.add("  \"variables\": [");
+        var remaining = variables.size();
+        for (final var entry : variables.entrySet()) {
+            final var counters = entry.getValue();
+            lines.add("    {\"name\": %s, \"reads\": %d, \"writes\": %d}%s".formatted(
+                quote(entry.getKey().getName()), counters[READS], counters[WRITES], --remaining > 0 ? "," : ""));
+        }
+        lines.add("  ],");
+
+        lines.add("  \"trace\": {");
+        lines.add("    \"capacity\": %d,".formatted(traceIndices.length));
+        lines.add("    \"dropped\": %d,".formatted(executed - traceSize()));
+        lines.add("    \"entries\": [");
+        for (var seq = executed - traceSize(); seq < executed; seq++) {
+            final var slot = (int) (seq % traceIndices.length);
+            final var value = traceHasValue[slot] ? String.valueOf(traceValues[slot]) : "null";
+            lines.add("      {\"seq\": %d, \"index\": %d, \"instruction\": %s, \"value\": %s}%s".formatted(
+                seq, traceIndices[slot], quote(traceInstructions[slot].toString()), value, seq + 1 < executed ? "," : ""));
+        }
+        lines.add("    ]");
+        lines.add("  }");
+        lines.add("}");
+        return lines;
+    }
+
+    private int traceSize() {
+        return (int) Math.min(executed, traceIndices.length);
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static final int READS = 0;
+    private static final int WRITES = 1;
+
+    private int instructionCount = 0;
+    private long startTime = 0;
+    private long elapsedNanos = 0;
+    private long executed = 0;
+    private final long[] kindCounts = new long[InstructionKind.values().length];
+    private final Map<IRVariable, long[]> variables = new LinkedHashMap<>();
+
+    private final int[] traceIndices;
+    private final Instruction[] traceInstructions;
+    private final int[] traceValues;
+    private final boolean[] traceHasValue;
+}
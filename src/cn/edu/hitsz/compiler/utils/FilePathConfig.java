@@ -26,6 +26,12 @@ public final class FilePathConfig {
     public final static String LR1_TABLE_PATH = "data/in/LR1_table.csv";
 
 
+    /**
+     * LR 分析表的二进制缓存, 由 CSV 分析表首次读取时生成
+     */
+    public final static String LR1_TABLE_CACHE_PATH = "data/out/LR1_table.bin";
+
+
     //==================================== 输出文件 ========================================//
     /**
      * 词法单元流
@@ -57,11 +63,41 @@ public final class FilePathConfig {
      */
     public static final String EMULATE_RESULT = "data/out/ir_emulate_result.txt";
 
+    /**
+     * 各 IR 变换遍的耗时与指令条数变化, 只在执行了变换遍时输出
+     */
+    public static final String PASS_STATISTICS = "data/out/ir_pass_statistics.txt";
+
+    /**
+     * 指定的 IR 变换遍之后的 IR, 只在指定了这样的遍时输出
+     */
+    public static final String IR_AFTER_PASSES = "data/out/ir_after_passes.txt";
+
+    /**
+     * IR 模拟执行的剖析数据, 只在开启剖析时输出
+     */
+    public static final String EMULATE_PROFILE = "data/out/ir_emulate_profile.json";
+
+    /**
+     * IR 模拟执行时各变量的读写次数, 只在开启剖析时输出
+     */
+    public static final String EMULATE_VARIABLES = "data/out/ir_emulate_variables.csv";
+
+    /**
+     * IR 模拟执行的执行轨迹, 只在开启剖析时输出
+     */
+    public static final String EMULATE_TRACE = "data/out/ir_emulate_trace.csv";
+
     /**
      * 汇编代码
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * 由分析表生成的专用驱动程序的源代码, 仅在给出 --dump-generated-parser 时输出
+     */
+    public static final String GENERATED_PARSER_PATH = "data/out/GeneratedParser.java";
+
     private FilePathConfig() {
     }
 }
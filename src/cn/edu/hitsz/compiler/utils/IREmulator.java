@@ -18,7 +18,20 @@ public class IREmulator {
         return new IREmulator(instructions);
     }
 
+    /**
+     * 设置剖析数据. 设置后改用带插桩的执行循环, 把执行的情况记录到其中
+     *
+     * @param profile 剖析数据, 为 null 时不做剖析
+     */
+    public void setProfile(EmulatorProfile profile) {
+        this.profile = profile;
+    }
+
     public Optional<Integer> execute() {
+        if (profile != null) {
+            return executeProfiled();
+        }
+
         for (final var instruction : instructions) {
             switch (instruction.getKind()) {
                 case MOV -> {
@@ -53,6 +66,41 @@ public class IREmulator {
         return Optional.ofNullable(this.returnValue);
     }
 
+    /**
+     * 与 {@link #execute()} 相同, 但每条指令执行后都记录到剖析数据中
+     */
+    private Optional<Integer> executeProfiled() {
+        profile.begin(instructions.size());
+        var index = 0;
+        for (final var instruction : instructions) {
+            final Integer value = switch (instruction.getKind()) {
+                case MOV -> evalProfiled(instruction.getFrom());
+                case ADD -> evalProfiled(instruction.getLHS()) + evalProfiled(instruction.getRHS());
+                case SUB -> evalProfiled(instruction.getLHS()) - evalProfiled(instruction.getRHS());
+                case MUL -> evalProfiled(instruction.getLHS()) * evalProfiled(instruction.getRHS());
+                case RET -> evalProfiled(instruction.getReturnValue());
+            };
+
+            if (instruction.getKind().isReturn()) {
+                this.returnValue = value;
+            } else {
+                environment.put(instruction.getResult(), value);
+                profile.write(instruction.getResult());
+            }
+            profile.executed(index++, instruction, value);
+        }
+        profile.end();
+
+        return Optional.ofNullable(this.returnValue);
+    }
+
+    private Integer evalProfiled(IRValue value) {
+        if (value instanceof IRVariable variable) {
+            profile.read(variable);
+        }
+        return eval(value);
+    }
+
     public Integer eval(IRValue value) {
         if (value instanceof IRImmediate immediate) {
             return immediate.getValue();
@@ -72,4 +120,5 @@ public class IREmulator {
     private final List<Instruction> instructions;
     private final Map<IRVariable, Integer> environment;
     private Integer returnValue;
+    private EmulatorProfile profile = null;
 }
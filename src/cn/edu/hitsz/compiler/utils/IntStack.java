@@ -0,0 +1,76 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * 元素为 int 的栈
+ * <br>
+ * 与 {@code java.util.Stack<Integer>} 不同, 它既不对元素装箱, 也不对操作加锁. 容量按倍数增长, 调用 {@link #clear()}
+ * 后保留已经分配的数组, 因此被复用时不会再分配内存. 只应在单个线程中使用.
+ */
+public class IntStack {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] elements = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public void push(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = value;
+    }
+
+    public int pop() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        return elements[--size];
+    }
+
+    /**
+     * 一次弹出多个元素
+     *
+     * @param count 弹出的元素个数
+     */
+    public void pop(int count) {
+        if (count > size) {
+            throw new EmptyStackException();
+        }
+        size -= count;
+    }
+
+    public int peek() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        return elements[size - 1];
+    }
+
+    /**
+     * @param index 从栈底开始的下标
+     * @return 该位置的元素
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空栈, 但保留已分配的空间以供复用
+     */
+    public void clear() {
+        size = 0;
+    }
+}
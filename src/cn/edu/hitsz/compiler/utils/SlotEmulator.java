@@ -0,0 +1,127 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 以槽位模拟执行 IR 的类, 结果与 {@link IREmulator} 完全相同
+ * <br>
+ * 加载时先把每个变量解析为一个槽位, 每个立即数也解析为一个预先填好值的槽位, 于是每个操作数都只是帧中的一个下标.
+ * 执行时在一个 int[] 帧上按紧凑的操作码逐条执行, 既不做哈希查找也不装箱.
+ * <br>
+ * IR 是没有跳转的直线代码, 因此是否会读取未赋值的变量在加载时就能确定.
+ * {@link IREmulator} 对这种变量得到 null, 为了与其保持一致, 这样的程序会退回到 {@link IREmulator} 执行.
+ */
+public class SlotEmulator {
+    public static SlotEmulator load(IRBuffer buffer) {
+        return new SlotEmulator(buffer);
+    }
+
+    public static SlotEmulator load(List<Instruction> instructions) {
+        return new SlotEmulator(IRBuffer.of(instructions));
+    }
+
+    public Optional<Integer> execute() {
+        if (fallback != null) {
+            return fallback.execute();
+        }
+
+        final var code = this.code;
+        final var frame = initialFrame.clone();
+        var returned = false;
+        var returnValue = 0;
+        for (var pc = 0; pc < code.length; pc += STRIDE) {
+            switch (code[pc]) {
+                case OP_MOV -> frame[code[pc + 1]] = frame[code[pc + 2]];
+                case OP_ADD -> frame[code[pc + 1]] = frame[code[pc + 2]] + frame[code[pc + 3]];
+                case OP_SUB -> frame[code[pc + 1]] = frame[code[pc + 2]] - frame[code[pc + 3]];
+                case OP_MUL -> frame[code[pc + 1]] = frame[code[pc + 2]] * frame[code[pc + 3]];
+                case OP_RET -> {
+                    // 与 IREmulator 相同, 以最后一条 RET 的值为准
+                    returned = true;
+                    returnValue = frame[code[pc + 2]];
+                }
+                default -> throw new RuntimeException("Unknown opcode: " + code[pc]);
+            }
+        }
+
+        return returned ? Optional.of(returnValue) : Optional.empty();
+    }
+
+    /**
+     * @return 是否因读取未赋值的变量而退回到 {@link IREmulator} 执行
+     */
+    public boolean isFallback() {
+        return fallback != null;
+    }
+
+    private SlotEmulator(IRBuffer buffer) {
+        // 变量占据帧的前 variableCount 个槽位, 立即数依次排在其后
+        final var variableCount = buffer.getVariableCount();
+        final var constantCount = buffer.getConstantCount();
+        final var frame = new int[variableCount + constantCount];
+        for (var i = 0; i < constantCount; i++) {
+            frame[variableCount + i] = buffer.getConstant(i);
+        }
+
+        final var size = buffer.size();
+        final var code = new int[size * STRIDE];
+        final var assigned = new boolean[variableCount];
+        var readsUnassigned = false;
+        for (var i = 0; i < size; i++) {
+            final var kind = buffer.getKind(i);
+            final var pc = i * STRIDE;
+            code[pc] = opcodeOf(kind);
+
+            final var lhs = buffer.getLHS(i);
+            final var rhs = buffer.getRHS(i);
+            readsUnassigned |= IRBuffer.isVariable(lhs) && !assigned[lhs];
+            readsUnassigned |= IRBuffer.isVariable(rhs) && !assigned[rhs];
+            code[pc + 2] = slotOf(lhs, variableCount);
+            code[pc + 3] = rhs == IRBuffer.NONE ? 0 : slotOf(rhs, variableCount);
+
+            if (!kind.isReturn()) {
+                final var result = buffer.getResult(i);
+                assigned[result] = true;
+                code[pc + 1] = result;
+            }
+        }
+
+        this.code = code;
+        this.initialFrame = frame;
+        this.fallback = readsUnassigned ? IREmulator.load(buffer.asList()) : null;
+    }
+
+    private static int slotOf(int operand, int variableCount) {
+        return IRBuffer.isVariable(operand) ? operand : variableCount + IRBuffer.constantIndexOf(operand);
+    }
+
+    private static int opcodeOf(InstructionKind kind) {
+        return switch (kind) {
+            case MOV -> OP_MOV;
+            case ADD -> OP_ADD;
+            case SUB -> OP_SUB;
+            case MUL -> OP_MUL;
+            case RET -> OP_RET;
+        };
+    }
+
+    /**
+     * 每条指令在 code 中占据的 int 个数: 操作码, 结果槽位, 第一个操作数槽位, 第二个操作数槽位
+     */
+    private static final int STRIDE = 4;
+
+    private static final int OP_MOV = 0;
+    private static final int OP_ADD = 1;
+    private static final int OP_SUB = 2;
+    private static final int OP_MUL = 3;
+    private static final int OP_RET = 4;
+
+    private final int[] code;
+    private final int[] initialFrame;
+    private final IREmulator fallback;
+}
@@ -0,0 +1,87 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * 供语法制导翻译使用的值栈
+ * <br>
+ * 与 {@code java.util.Stack} 不同, 它的操作不加锁, 容量按倍数增长. 除了栈顶操作外, 还允许按下标访问元素,
+ * 以便语义动作直接读取产生式体各个符号对应的值. 调用 {@link #clear()} 后保留已分配的数组, 在多次编译之间复用.
+ * 只应在单个线程中使用.
+ *
+ * @param <T> 元素类型
+ */
+public class ValueStack<T> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] elements = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public void push(T value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T pop() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        final var value = (T) elements[--size];
+        // 不再持有弹出的对象, 以免妨碍垃圾回收
+        elements[size] = null;
+        return value;
+    }
+
+    /**
+     * 一次弹出多个元素
+     *
+     * @param count 弹出的元素个数
+     */
+    public void pop(int count) {
+        if (count > size) {
+            throw new EmptyStackException();
+        }
+        Arrays.fill(elements, size - count, size, null);
+        size -= count;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        return (T) elements[size - 1];
+    }
+
+    /**
+     * @param index 从栈底开始计数的下标
+     * @return 对应的元素
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (T) elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空栈, 但保留已分配的空间以供复用
+     */
+    public void clear() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+    }
+}